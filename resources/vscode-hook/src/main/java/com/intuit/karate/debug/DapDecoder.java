@@ -23,7 +23,6 @@
  */
 package com.intuit.karate.debug;
 
-import com.intuit.karate.Json;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.ByteToMessageDecoder;
@@ -33,7 +32,6 @@ import org.slf4j.LoggerFactory;
 
 import java.nio.charset.StandardCharsets;
 import java.util.List;
-import java.util.Map;
 
 /**
  *
@@ -83,13 +81,11 @@ public class DapDecoder extends ByteToMessageDecoder {
         return -1;
     }
 
-    private static DapMessage encode(ByteBuf in, int length) {
-        String msg = in.readCharSequence(length, StandardCharsets.UTF_8).toString();
+    private static DapMessage encode(ByteBuf in, int length) throws Exception {
         if (logger.isTraceEnabled()) {
-            logger.trace(">> {}", msg);
+            logger.trace(">> {}", in.toString(in.readerIndex(), length, StandardCharsets.UTF_8));
         }
-        Map<String, Object> map = Json.of(msg).value();
-        return new DapMessage(map);
+        return new DapMessage(DapJson.read(in, length));
     }
 
 }
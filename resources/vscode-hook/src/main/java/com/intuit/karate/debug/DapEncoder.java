@@ -45,17 +45,23 @@ public class DapEncoder extends MessageToMessageEncoder<DapMessage> {
 
     @Override
     protected void encode(ChannelHandlerContext ctx, DapMessage dm, List<Object> out) throws Exception {
-        String msg = dm.toJson();
+        // the json is written first, the header goes in its own buffer once the length is known
+        ByteBuf body = ctx.alloc().buffer();
+        try {
+            DapJson.write(dm, body);
+        } catch (Exception e) {
+            body.release();
+            throw e;
+        }
         if (logger.isTraceEnabled()) {
-            logger.trace("<< {}", msg);
+            logger.trace("<< {}", body.toString(StandardCharsets.UTF_8));
         }
-        ByteBuf buf = ctx.alloc().buffer();
-        byte[] bytes = msg.getBytes(StandardCharsets.UTF_8);
-        buf.writeBytes(CONTENT_LENGTH_COLON);
-        buf.writeCharSequence(bytes.length + "", StandardCharsets.UTF_8);
-        buf.writeBytes(CRLFCRLF);
-        buf.writeBytes(bytes);
-        out.add(buf);
+        ByteBuf header = ctx.alloc().buffer(CONTENT_LENGTH_COLON.length + 10 + CRLFCRLF.length);
+        header.writeBytes(CONTENT_LENGTH_COLON);
+        header.writeCharSequence(Integer.toString(body.readableBytes()), StandardCharsets.US_ASCII);
+        header.writeBytes(CRLFCRLF);
+        out.add(header);
+        out.add(body);
     }
 
 }
@@ -0,0 +1,159 @@
+package com.intuit.karate.debug;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads and writes DAP messages as json straight from and into netty buffers, with the jackson streaming parser and
+ * generator, which recycle their own char and byte buffers.
+ *
+ * Values are read as maps, lists, strings, booleans and numbers, integers as Integer when they fit like the karate
+ * json parser does. Unknown objects, and NaN or infinite numbers, are written as strings.
+ *
+ * @author ivangsa
+ */
+public class DapJson {
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    private DapJson() {
+        // only static methods
+    }
+
+    /**
+     * Reads the next <code>length</code> bytes of the buffer as a json object.
+     */
+    public static Map<String, Object> read(ByteBuf in, int length) throws IOException {
+        JsonParser parser;
+        if (in.hasArray()) {
+            parser = FACTORY.createParser(in.array(), in.arrayOffset() + in.readerIndex(), length);
+            in.skipBytes(length);
+        } else {
+            parser = FACTORY.createParser((InputStream) new ByteBufInputStream(in.readSlice(length)));
+        }
+        try {
+            JsonToken token = parser.nextToken();
+            if (token != JsonToken.START_OBJECT) {
+                throw new IOException("dap message is not a json object: " + token);
+            }
+            return readObject(parser);
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * Writes the message as json at the end of the buffer.
+     */
+    public static void write(DapMessage dm, ByteBuf out) throws IOException {
+        try (JsonGenerator generator = FACTORY.createGenerator((OutputStream) new ByteBufOutputStream(out))) {
+            writeValue(generator, dm.toMap());
+        }
+    }
+
+    private static Map<String, Object> readObject(JsonParser parser) throws IOException {
+        Map<String, Object> map = new LinkedHashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            map.put(name, readValue(parser, parser.nextToken()));
+        }
+        return map;
+    }
+
+    private static List<Object> readArray(JsonParser parser) throws IOException {
+        List<Object> list = new ArrayList<>();
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            list.add(readValue(parser, token));
+        }
+        return list;
+    }
+
+    private static Object readValue(JsonParser parser, JsonToken token) throws IOException {
+        if (token == null) {
+            throw new IOException("unexpected end of dap message");
+        }
+        switch (token) {
+            case START_OBJECT:
+                return readObject(parser);
+            case START_ARRAY:
+                return readArray(parser);
+            case VALUE_STRING:
+                return parser.getText();
+            case VALUE_NUMBER_INT:
+                switch (parser.getNumberType()) {
+                    case INT:
+                        return parser.getIntValue();
+                    case LONG:
+                        return parser.getLongValue();
+                    default:
+                        return parser.getBigIntegerValue();
+                }
+            case VALUE_NUMBER_FLOAT:
+                return parser.getDoubleValue();
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            case VALUE_NULL:
+                return null;
+            default:
+                throw new IOException("unexpected token in dap message: " + token);
+        }
+    }
+
+    private static void writeValue(JsonGenerator generator, Object value) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else if (value instanceof String) {
+            generator.writeString((String) value);
+        } else if (value instanceof Map) {
+            generator.writeStartObject();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                generator.writeFieldName(String.valueOf(entry.getKey()));
+                writeValue(generator, entry.getValue());
+            }
+            generator.writeEndObject();
+        } else if (value instanceof Collection) {
+            generator.writeStartArray();
+            for (Object item : (Collection<?>) value) {
+                writeValue(generator, item);
+            }
+            generator.writeEndArray();
+        } else if (value instanceof Boolean) {
+            generator.writeBoolean((Boolean) value);
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            generator.writeNumber(((Number) value).longValue());
+        } else if (value instanceof BigInteger) {
+            generator.writeNumber((BigInteger) value);
+        } else if (value instanceof BigDecimal) {
+            generator.writeNumber((BigDecimal) value);
+        } else if (value instanceof Number) {
+            double number = ((Number) value).doubleValue();
+            if (Double.isNaN(number) || Double.isInfinite(number)) {
+                generator.writeString(value.toString()); // not valid json numbers
+            } else {
+                generator.writeNumber(number);
+            }
+        } else {
+            generator.writeString(value.toString());
+        }
+    }
+
+}
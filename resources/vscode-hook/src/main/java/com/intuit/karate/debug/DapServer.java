@@ -24,8 +24,10 @@
 package com.intuit.karate.debug;
 
     import io.netty.bootstrap.ServerBootstrap;
+    import io.netty.buffer.PooledByteBufAllocator;
     import io.netty.channel.Channel;
     import io.netty.channel.ChannelInitializer;
+    import io.netty.channel.ChannelOption;
     import io.netty.channel.ChannelPipeline;
     import io.netty.channel.EventLoopGroup;
     import io.netty.channel.nio.NioEventLoopGroup;
@@ -85,6 +87,7 @@ public class DapServer {
             ServerBootstrap b = new ServerBootstrap();
             b.group(bossGroup, workerGroup)
                     .channel(NioServerSocketChannel.class)
+                    .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
                     // .handler(new LoggingHandler(getClass().getName(), LogLevel.TRACE))
                     .childHandler(new ChannelInitializer() {
                         @Override
@@ -26,6 +26,7 @@ package com.intuit.karate.debug;
 import com.intuit.karate.*;
 import com.intuit.karate.cli.IdeMain;
 import com.intuit.karate.core.*;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
@@ -39,6 +40,8 @@ import java.util.AbstractMap.SimpleEntry;
 import java.util.*;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.intuit.karate.core.Variable.Type.LIST;
 import static com.intuit.karate.core.Variable.Type.MAP;
@@ -51,6 +54,10 @@ public class DapServerHandler extends SimpleChannelInboundHandler<DapMessage> im
 
     private static final Logger logger = LoggerFactory.getLogger(DapServerHandler.class);
 
+    public static final String OUTPUT_FLUSH_MILLIS = "vscode.debug.output.flushMillis";
+    public static final String OUTPUT_BATCH_SIZE = "vscode.debug.output.batchSize";
+    public static final String OUTPUT_MAX_BYTES_PER_SECOND = "vscode.debug.output.maxBytesPerSecond";
+
     private final DapServer server;
 
     private Channel channel;
@@ -61,10 +68,15 @@ public class DapServerHandler extends SimpleChannelInboundHandler<DapMessage> im
     private Thread runnerThread;
 
     private final Map<String, SourceBreakpoints> BREAKPOINTS = new ConcurrentHashMap();
+    private volatile BreakpointIndex breakpointIndex = new BreakpointIndex(Collections.emptyMap());
     protected final Map<Long, DebugThread> THREADS = new ConcurrentHashMap();
     protected final Map<Long, ScenarioRuntime> FRAMES = new ConcurrentHashMap();
-    protected final Map<Long, Stack<Map<String, Variable>>> FRAME_VARS = new ConcurrentHashMap();
+    protected final Map<Long, VariableHistory> FRAME_VARS = new ConcurrentHashMap<>();
     protected final Map<Long, Entry<String, Variable>> VARIABLES = new ConcurrentHashMap();
+    // frame of each variables reference, to release them when the frame resumes or ends
+    protected final Map<Long, Long> VARIABLE_FRAMES = new ConcurrentHashMap();
+    protected final HistoryBudget HISTORY_BUDGET = new HistoryBudget();
+    private final OutputAggregator outputs = new OutputAggregator();
 
     private List<String> launchArgs;
     private String launchCommand;
@@ -89,29 +101,197 @@ public class DapServerHandler extends SimpleChannelInboundHandler<DapMessage> im
         return -1;
     }
 
-    private SourceBreakpoints lookup(String pathEnd) {
-        for (Entry<String, SourceBreakpoints> entry : BREAKPOINTS.entrySet()) {
-            if (entry.getKey().endsWith(pathEnd)) {
-                return entry.getValue();
+    /**
+     * Breakpoints by normalized path and by every path suffix starting after a separator, rebuilt when breakpoints
+     * change. Feature files are resolved once against each index.
+     */
+    private class BreakpointIndex {
+
+        private final Map<String, SourceBreakpoints> byPath;
+        private final Map<String, SourceBreakpoints> bySuffix = new HashMap();
+        // by feature file path, features are parsed again on every call so they are not used as keys
+        private final Map<String, Optional<SourceBreakpoints>> byFile = new ConcurrentHashMap();
+
+        BreakpointIndex(Map<String, SourceBreakpoints> breakpoints) {
+            byPath = new HashMap(breakpoints);
+            for (Entry<String, SourceBreakpoints> entry : byPath.entrySet()) {
+                String path = entry.getKey();
+                bySuffix.putIfAbsent(path, entry.getValue());
+                for (int i = 0; i < path.length(); i++) {
+                    char c = path.charAt(i);
+                    if (c == '/' || c == '\\') {
+                        bySuffix.putIfAbsent(path.substring(i + 1), entry.getValue());
+                    }
+                }
+            }
+        }
+
+        SourceBreakpoints resolve(Feature feature) {
+            if (byPath.isEmpty()) {
+                return null;
+            }
+            File file = feature.getResource().getFile();
+            if (file == null) {
+                return null;
+            }
+            return byFile.computeIfAbsent(file.getPath(), p -> Optional.ofNullable(lookup(p))).orElse(null);
+        }
+
+        private SourceBreakpoints lookup(String filePath) {
+            String path = normalizePath(filePath);
+            int pos = findPos(path);
+            if (pos != -1) {
+                return bySuffix.get(path.substring(pos));
+            } else {
+                return byPath.get(path);
             }
         }
-        return null;
     }
 
-    protected Breakpoint resolveBreakpoint(Step step, int line, ScenarioRuntime context) {
-        Feature feature = step.getFeature();
-        File file = feature.getResource().getFile();
-        if (file == null) {
-            return null;
+    /**
+     * Log output of each thread, sent to the IDE in batches every <code>vscode.debug.output.flushMillis</code>
+     * (default 50), when a batch reaches <code>vscode.debug.output.batchSize</code> chars (default 16384), and before
+     * the thread stops.
+     *
+     * Output above <code>vscode.debug.output.maxBytesPerSecond</code> (default 1048576, 0 for no limit, counted in
+     * UTF-8 bytes) is dropped and summarized, test threads never wait for the IDE.
+     *
+     * Writes are always queued to the channel event loop, even from the event loop itself, so they go out in the order
+     * batches were taken.
+     */
+    private class OutputAggregator {
+
+        private final long flushMillis = Long.getLong(OUTPUT_FLUSH_MILLIS, 50);
+        private final int batchSize = Integer.getInteger(OUTPUT_BATCH_SIZE, 16 * 1024);
+        private final long maxBytesPerSecond = Long.getLong(OUTPUT_MAX_BYTES_PER_SECOND, 1024 * 1024);
+        private final Map<Long, OutputBatch> batches = new ConcurrentHashMap();
+        private final AtomicBoolean flushScheduled = new AtomicBoolean();
+        private long tokens = maxBytesPerSecond;
+        private long lastRefill = System.nanoTime();
+
+        // batches are taken and their writes queued holding the batch lock, so each thread output stays in order
+        void append(long threadId, String text) {
+            OutputBatch batch = batches.computeIfAbsent(threadId, k -> new OutputBatch());
+            boolean sent = false;
+            synchronized (batch) {
+                int bytes = ByteBufUtil.utf8Bytes(text);
+                if (acquire(bytes)) {
+                    batch.text.append(text);
+                    if (batch.text.length() >= batchSize) {
+                        sent = send(batch.take(), true);
+                    }
+                } else {
+                    batch.droppedLines++;
+                    batch.droppedBytes += bytes;
+                }
+            }
+            if (!sent) {
+                scheduleFlush();
+            }
         }
-        String path = normalizePath(file.getPath());
-        int pos = findPos(path);
-        SourceBreakpoints sb;
-        if (pos != -1) {
-            sb = lookup(path.substring(pos));
-        } else {
-            sb = BREAKPOINTS.get(path);
+
+        void flush(long threadId) {
+            OutputBatch batch = batches.get(threadId);
+            if (batch != null) {
+                synchronized (batch) {
+                    send(batch.take(), true);
+                }
+            }
+        }
+
+        void flushAll() {
+            boolean sent = false;
+            for (OutputBatch batch : batches.values()) {
+                synchronized (batch) {
+                    sent |= send(batch.take(), false);
+                }
+            }
+            Channel ch = channel;
+            if (sent && ch != null) {
+                ch.eventLoop().execute(ch::flush);
+            }
+        }
+
+        void clear() {
+            batches.clear();
+        }
+
+        private synchronized boolean acquire(int bytes) {
+            if (maxBytesPerSecond <= 0) {
+                return true;
+            }
+            long now = System.nanoTime();
+            long elapsed = Math.min(now - lastRefill, 1000000000L);
+            tokens = Math.min(maxBytesPerSecond, tokens + elapsed * maxBytesPerSecond / 1000000000L);
+            lastRefill = now;
+            // output longer than the limit passes when nothing else was sent for a second
+            if (tokens < Math.min(bytes, maxBytesPerSecond)) {
+                return false;
+            }
+            tokens -= bytes;
+            return true;
         }
+
+        private void scheduleFlush() {
+            Channel ch = channel;
+            if (ch != null && flushScheduled.compareAndSet(false, true)) {
+                ch.eventLoop().schedule(() -> {
+                    flushScheduled.set(false);
+                    flushAll();
+                }, flushMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        /**
+         * Queues the write, also on the event loop so it can't overtake writes queued before.
+         *
+         * @return false if there was nothing to send.
+         */
+        private boolean send(String text, boolean flush) {
+            Channel ch = channel;
+            if (ch == null || text == null) {
+                return false;
+            }
+            ch.eventLoop().execute(() -> {
+                ch.write(event("output").body("output", text));
+                if (flush) {
+                    ch.flush();
+                }
+            });
+            return true;
+        }
+
+    }
+
+    private static class OutputBatch {
+
+        StringBuilder text = new StringBuilder();
+        int droppedLines;
+        long droppedBytes;
+
+        // dropped output is summarized once per batch
+        void appendDropped() {
+            if (droppedLines > 0) {
+                text.append("[debug] output rate limit exceeded, ").append(droppedLines)
+                        .append(" log entries (").append(droppedBytes).append(" bytes) dropped\n");
+                droppedLines = 0;
+                droppedBytes = 0;
+            }
+        }
+
+        String take() {
+            appendDropped();
+            if (text.length() == 0) {
+                return null;
+            }
+            String result = text.toString();
+            text = new StringBuilder();
+            return result;
+        }
+    }
+
+    protected Breakpoint resolveBreakpoint(Step step, int line, ScenarioRuntime context) {
+        SourceBreakpoints sb = breakpointIndex.resolve(step.getFeature());
         if (sb == null) {
             return null;
         }
@@ -161,16 +341,18 @@ public class DapServerHandler extends SimpleChannelInboundHandler<DapMessage> im
         }
         String parentExpression = "";
         Map<String, Variable> vars = null;
+        Long ownerFrameId = frameId;
         if (FRAME_VARS.containsKey(frameId)) {
             focusedFrameId = frameId;
-            Stack<Map<String, Variable>> varsStack = FRAME_VARS.get(frameId);
-            if (varsStack.isEmpty()) {
+            VariableHistory history = FRAME_VARS.get(frameId);
+            if (history.isEmpty()) {
                 return Collections.EMPTY_LIST; // edge case, no variables were even created yet
             }
-            vars = varsStack.peek();
+            vars = history.peek();
         } else if (VARIABLES.containsKey(frameId)) {
             vars = new HashMap<>();
             Entry<String, Variable> varEntry = VARIABLES.get(frameId);
+            ownerFrameId = VARIABLE_FRAMES.get(frameId);
             parentExpression = varEntry.getKey();
             Variable var = varEntry.getValue();
             if (var.type == LIST) {
@@ -188,6 +370,7 @@ public class DapServerHandler extends SimpleChannelInboundHandler<DapMessage> im
             return Collections.EMPTY_LIST;
         }
         String finalParentExpression = parentExpression;
+        Long finalOwnerFrameId = ownerFrameId;
         List<Map<String, Object>> list = new ArrayList();
         vars.forEach((k, v) -> {
             if (v != null) {
@@ -204,6 +387,9 @@ public class DapServerHandler extends SimpleChannelInboundHandler<DapMessage> im
                 String pathExpression = k.startsWith("[") ? finalParentExpression.replaceAll("\\.$", "") : finalParentExpression;
                 if (v.type == LIST || v.type == MAP) {
                     VARIABLES.put(++nextVariablesReference, new SimpleEntry(pathExpression + k + ".", v));
+                    if (finalOwnerFrameId != null) {
+                        VARIABLE_FRAMES.put(nextVariablesReference, finalOwnerFrameId);
+                    }
                     map.put("presentationHint", "data");
                     map.put("variablesReference", nextVariablesReference);
                 } else {
@@ -252,6 +438,7 @@ public class DapServerHandler extends SimpleChannelInboundHandler<DapMessage> im
             case "setBreakpoints":
                 SourceBreakpoints sb = new SourceBreakpoints(req.getArguments());
                 BREAKPOINTS.put(normalizePath(sb.path), sb);
+                breakpointIndex = new BreakpointIndex(BREAKPOINTS);
                 logger.trace("source breakpoints: {}", sb);
                 ctx.write(response(req).body("breakpoints", sb.getBreakpointsAsListOfMaps()));
                 break;
@@ -310,8 +497,19 @@ public class DapServerHandler extends SimpleChannelInboundHandler<DapMessage> im
                 break;
             case "stepBack":
             case "reverseContinue": // since we can't disable this button
-                thread(req).stepBack().resume();
-                ctx.write(response(req));
+                DebugThread stepBackThread = thread(req);
+                VariableHistory history = FRAME_VARS.get(stepBackThread.stack.peek());
+                int evicted = history == null ? 0 : history.getEvicted();
+                boolean historyEnd = history != null && evicted > 0 && history.size() <= 1;
+                stepBackThread.stepBack().resume();
+                DapMessage stepBackResponse = response(req);
+                if (evicted > 0) {
+                    stepBackResponse.body("historyEvicted", evicted);
+                }
+                if (historyEnd) {
+                    output("[debug] step back history limit reached, older variables were evicted");
+                }
+                ctx.write(stepBackResponse);
                 break;
             case "stepIn":
                 thread(req).stepIn().resume();
@@ -333,9 +531,11 @@ public class DapServerHandler extends SimpleChannelInboundHandler<DapMessage> im
                 String expression = req.getArgument("expression", String.class);
                 Number evalFrameId = req.getArgument("frameId", Number.class);
                 String reqContext = req.getArgument("context", String.class);
-                ScenarioRuntime evalContext = FRAMES.get(evalFrameId.longValue());
+                ScenarioRuntime evalContext = evalFrameId == null ? null : FRAMES.get(evalFrameId.longValue());
                 String result;
-                if ("clipboard".equals(reqContext) || "hover".equals(reqContext)) {
+                if (evalContext == null) {
+                    result = "[error] scenario not running";
+                } else if ("clipboard".equals(reqContext) || "hover".equals(reqContext)) {
                     result = evaluateVarExpression(evalContext.engine.vars, expression);
                 } else {
                     ScenarioEngine.set(evalContext.engine);
@@ -447,6 +647,7 @@ public class DapServerHandler extends SimpleChannelInboundHandler<DapMessage> im
     }
 
     protected void stopEvent(long threadId, String reason, String description, List<Integer> breakPointIds) {
+        outputs.flush(threadId);
         channel.eventLoop().execute(() -> {
             DapMessage message = event("stopped")
                     .body("reason", reason)
@@ -470,6 +671,7 @@ public class DapServerHandler extends SimpleChannelInboundHandler<DapMessage> im
     }
 
     private void exit() {
+        outputs.flushAll();
         channel.eventLoop().execute(()
                 -> channel.writeAndFlush(event("exited")
                         .body("exitCode", 0)));
@@ -485,10 +687,14 @@ public class DapServerHandler extends SimpleChannelInboundHandler<DapMessage> im
 
     private void clearDebugSession() {
         this.BREAKPOINTS.clear();
+        this.breakpointIndex = new BreakpointIndex(Collections.emptyMap());
         this.THREADS.clear();
         this.FRAMES.clear();
+        this.FRAME_VARS.values().forEach(VariableHistory::clear);
         this.FRAME_VARS.clear();
         this.VARIABLES.clear();
+        this.VARIABLE_FRAMES.clear();
+        this.outputs.clear();
 
         launchCommand = null;
         preStep = null;
@@ -497,6 +703,31 @@ public class DapServerHandler extends SimpleChannelInboundHandler<DapMessage> im
         }
     }
 
+    /**
+     * Releases the variables references of the frames, they are only valid while the frames are stopped.
+     */
+    protected void releaseVariables(Collection<Long> frameIds) {
+        VARIABLE_FRAMES.entrySet().removeIf(entry -> {
+            if (frameIds.contains(entry.getValue())) {
+                VARIABLES.remove(entry.getKey());
+                return true;
+            }
+            return false;
+        });
+    }
+
+    /**
+     * Releases the scenario, variables and step back history of a frame, when its scenario ends.
+     */
+    protected void releaseFrame(long frameId) {
+        FRAMES.remove(frameId);
+        VariableHistory history = FRAME_VARS.remove(frameId);
+        if (history != null) {
+            history.clear();
+        }
+        releaseVariables(Collections.singleton(frameId));
+    }
+
     protected long nextFrameId() {
         return ++nextFrameId;
     }
@@ -507,6 +738,13 @@ public class DapServerHandler extends SimpleChannelInboundHandler<DapMessage> im
                         .body("output", text)));
     }
 
+    /**
+     * Output of a debug thread, batched and rate limited.
+     */
+    protected void output(long threadId, String text) {
+        outputs.append(threadId, text);
+    }
+
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
         cause.printStackTrace();
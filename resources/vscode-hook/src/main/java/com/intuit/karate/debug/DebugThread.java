@@ -28,12 +28,10 @@ import com.intuit.karate.RuntimeHook;
 import com.intuit.karate.core.ScenarioRuntime;
 import com.intuit.karate.core.Step;
 import com.intuit.karate.core.StepResult;
-import com.intuit.karate.core.Variable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  *
@@ -93,6 +91,7 @@ public class DebugThread implements RuntimeHook, LogAppender {
             }
         }
         handler.continueEvent(id);
+        handler.releaseVariables(new ArrayList(stack));
         // if we reached here - we have "resumed"
         // the stepBack logic is a little faulty and can only be called BEFORE beforeStep() (yes 2 befores)
         if (stepBack) { // don't clear flag yet !
@@ -121,7 +120,7 @@ public class DebugThread implements RuntimeHook, LogAppender {
         long frameId = handler.nextFrameId();
         stack.push(frameId);
         handler.FRAMES.put(frameId, context);
-        handler.FRAME_VARS.put(frameId, new Stack<>());
+        handler.FRAME_VARS.put(frameId, new VariableHistory(handler.HISTORY_BUDGET));
         if (context.caller.depth == 0) {
             handler.THREADS.put(id, this);
         }
@@ -132,7 +131,7 @@ public class DebugThread implements RuntimeHook, LogAppender {
 
     @Override
     public void afterScenario(ScenarioRuntime context) {
-        stack.pop();
+        handler.releaseFrame(stack.pop());
         if (context.caller.depth == 0) {
             handler.THREADS.remove(id);
         }
@@ -181,7 +180,7 @@ public class DebugThread implements RuntimeHook, LogAppender {
     public void afterStep(StepResult result, ScenarioRuntime context) {
         if (result.getResult().isFailed()) {
             String errorMessage = result.getErrorMessage();
-            handler.output("*** step failed: " + errorMessage + "\n");
+            handler.output(id, "*** step failed: " + errorMessage + "\n");
             stop("exception", errorMessage, null);
             errored = true;
         }
@@ -189,11 +188,9 @@ public class DebugThread implements RuntimeHook, LogAppender {
     }
 
     private void pushDebugFrameVariables(ScenarioRuntime context) {
-        Map<String, Variable> vars = context.engine.vars.entrySet().stream()
-                .collect(Collectors.toMap(v -> v.getKey(), v -> v.getValue().copy(true)));
-        Stack<Map<String, Variable>> stackVars = handler.FRAME_VARS.get(stack.peek());
-        if (stackVars != null) {
-            stackVars.push(vars);
+        VariableHistory history = handler.FRAME_VARS.get(stack.peek());
+        if (history != null) {
+            history.record(context.engine.vars);
         }
     }
 
@@ -260,7 +257,7 @@ public class DebugThread implements RuntimeHook, LogAppender {
 
     @Override
     public void append(String text) {
-        handler.output(appenderPrefix + text);
+        handler.output(id, appenderPrefix + text);
         appender.append(text);
     }
 
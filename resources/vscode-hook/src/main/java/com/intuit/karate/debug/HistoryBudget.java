@@ -0,0 +1,76 @@
+package com.intuit.karate.debug;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Memory budget shared by the {@link VariableHistory} of all debug frames: <code>vscode.debug.historyMaxMb</code>
+ * (default 256) of estimated variable size. When it is exceeded the oldest snapshots of any frame are evicted first,
+ * the last snapshot of a frame is always kept.
+ *
+ * @author ivangsa
+ */
+public class HistoryBudget {
+
+    public static final String HISTORY_MAX_MB = "vscode.debug.historyMaxMb";
+
+    private final long maxBytes;
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final AtomicLong nextSequence = new AtomicLong();
+    private final Set<VariableHistory> histories = ConcurrentHashMap.newKeySet();
+
+    public HistoryBudget() {
+        this(Long.getLong(HISTORY_MAX_MB, 256) * 1024 * 1024);
+    }
+
+    public HistoryBudget(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    void register(VariableHistory history) {
+        histories.add(history);
+    }
+
+    void unregister(VariableHistory history) {
+        histories.remove(history);
+    }
+
+    long nextSequence() {
+        return nextSequence.incrementAndGet();
+    }
+
+    void add(long bytes) {
+        usedBytes.addAndGet(bytes);
+    }
+
+    /**
+     * Evicts the oldest snapshots of all histories until the budget is met. Must not be called holding the lock of a
+     * history, as it locks them one at a time.
+     */
+    synchronized void enforce() {
+        while (usedBytes.get() > maxBytes) {
+            VariableHistory oldest = null;
+            long oldestSequence = Long.MAX_VALUE;
+            for (VariableHistory history : histories) {
+                long sequence = history.getEvictableSequence();
+                if (sequence < oldestSequence) {
+                    oldest = history;
+                    oldestSequence = sequence;
+                }
+            }
+            if (oldest == null || !oldest.evictOldest()) {
+                return; // only the last snapshot of each frame is left
+            }
+        }
+    }
+
+}
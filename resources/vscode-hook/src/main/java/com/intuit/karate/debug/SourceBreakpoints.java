@@ -28,6 +28,8 @@ import com.intuit.karate.core.ScenarioRuntime;
 import com.intuit.karate.core.Variable;
 
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -41,23 +43,24 @@ public class SourceBreakpoints {
     public final String path;
     public final List<Breakpoint> breakpoints;
     public final boolean sourceModified;
+    // lines with breakpoints, checked before every step
+    private final BitSet lines = new BitSet();
+    private final Map<Integer, List<Breakpoint>> breakpointsByLine = new HashMap();
     
     public Breakpoint resolveBreakpoint(int line, ScenarioRuntime context) {
-        if (breakpoints == null || breakpoints.isEmpty()) {
+        if (line < 0 || !lines.get(line)) {
             return null;
         }
-        for (Breakpoint b : breakpoints) {
-            if (b.line == line) {
-                if (b.condition == null) {                    
+        for (Breakpoint b : breakpointsByLine.get(line)) {
+            if (b.condition == null) {
+                return b;
+            } else {
+                Variable evalCondition = context.engine.evalKarateExpression(b.condition);
+                if (evalCondition != null && evalCondition.type != Variable.Type.BOOLEAN) {
+                    return b;
+                }
+                if (evalCondition != null && evalCondition.isTrue()) {
                     return b;
-                } else {
-                    Variable evalCondition = context.engine.evalKarateExpression(b.condition);
-                    if (evalCondition != null && evalCondition.type != Variable.Type.BOOLEAN) {
-                        return b;
-                    }
-                    if (evalCondition != null && evalCondition.isTrue()) {
-                        return b;
-                    }                    
                 }
             }
         }
@@ -71,7 +74,10 @@ public class SourceBreakpoints {
         List<Map<String, Object>> list = json.get("breakpoints");
         breakpoints = new ArrayList(list.size());
         for (Map<String, Object> bm : list) {
-            breakpoints.add(new Breakpoint(bm));
+            Breakpoint b = new Breakpoint(bm);
+            breakpoints.add(b);
+            lines.set(b.line);
+            breakpointsByLine.computeIfAbsent(b.line, k -> new ArrayList(1)).add(b);
         }
         sourceModified = json.get("sourceModified");
     }
@@ -0,0 +1,333 @@
+package com.intuit.karate.debug;
+
+import com.intuit.karate.core.Variable;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Variables of a debug frame after each step, for the <code>variables</code> and <code>stepBack</code> requests.
+ *
+ * Each snapshot only copies the variables that changed since the previous step: a different variable, or a json
+ * value whose content hash changed (karate <code>set</code> and <code>remove</code> modify json in place). Unchanged
+ * variables share the copy of a previous snapshot, and full snapshots are only built when requested.
+ *
+ * Up to <code>vscode.debug.historyDepth</code> (default 100) snapshots are kept, and the estimated size of the copies
+ * counts against a {@link HistoryBudget} shared by all frames. Evicted snapshots are merged into the next one.
+ * Snapshots are recorded by the frame thread while it is running and read while it is stopped, but the budget may
+ * evict them from any thread.
+ *
+ * @author ivangsa
+ */
+public class VariableHistory {
+
+    public static final String HISTORY_DEPTH = "vscode.debug.historyDepth";
+
+    private static final int UNKNOWN_HASH = 0;
+    private static final int MAX_SIZE_DEPTH = 64;
+
+    private final int maxDepth;
+    private final HistoryBudget budget;
+    // oldest first, the first one is always complete
+    private final List<Snapshot> snapshots = new ArrayList<>();
+    // live variables at the last snapshot, to find the ones changed since
+    private final Map<String, Seen> seen = new HashMap<>();
+    private long bytes;
+    private int evicted;
+
+    public VariableHistory(HistoryBudget budget) {
+        this(Integer.getInteger(HISTORY_DEPTH, 100), budget);
+    }
+
+    public VariableHistory(int maxDepth, HistoryBudget budget) {
+        this.maxDepth = Math.max(1, maxDepth);
+        this.budget = budget;
+        budget.register(this);
+    }
+
+    public synchronized boolean isEmpty() {
+        return snapshots.isEmpty();
+    }
+
+    public synchronized int size() {
+        return snapshots.size();
+    }
+
+    /**
+     * @return estimated size in bytes of the copied variables.
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return how many snapshots were evicted, by depth or by the memory budget.
+     */
+    public synchronized int getEvicted() {
+        return evicted;
+    }
+
+    /**
+     * Records the variables after a step.
+     */
+    public void record(Map<String, Variable> vars) {
+        synchronized (this) {
+            // nothing to compare against, the snapshot copies every variable
+            boolean complete = seen.isEmpty();
+            Map<String, Variable> changed = new HashMap<>();
+            Map<String, Long> sizes = new HashMap<>();
+            Set<String> removed = new HashSet<>(seen.keySet());
+            for (Map.Entry<String, Variable> entry : vars.entrySet()) {
+                String name = entry.getKey();
+                Variable var = entry.getValue();
+                removed.remove(name);
+                if (var == null) {
+                    continue;
+                }
+                int hash = contentHash(var);
+                Seen previous = seen.get(name);
+                if (previous == null || previous.var != var || previous.hash != hash || hash == UNKNOWN_HASH) {
+                    Variable copy = var.copy(true);
+                    changed.put(name, copy);
+                    sizes.put(name, estimateSize(copy));
+                    seen.put(name, new Seen(var, hash));
+                }
+            }
+            for (String name : removed) {
+                seen.remove(name);
+            }
+            Snapshot snapshot = new Snapshot(budget.nextSequence(), changed, removed, sizes);
+            if (complete) {
+                snapshot.materialized = Collections.unmodifiableMap(changed);
+                snapshot.complete = true;
+            }
+            snapshots.add(snapshot);
+            addBytes(snapshot.bytes);
+            if (snapshots.size() > maxDepth) {
+                evictOldest();
+            }
+        }
+        budget.enforce();
+    }
+
+    /**
+     * @return the variables after the last step, or null if there are none.
+     */
+    public synchronized Map<String, Variable> peek() {
+        return snapshots.isEmpty() ? null : materialize(snapshots.size() - 1);
+    }
+
+    /**
+     * Drops the last snapshot, when stepping back.
+     *
+     * @return false if there was none.
+     */
+    public synchronized boolean pop() {
+        if (snapshots.isEmpty()) {
+            return false;
+        }
+        Snapshot last = snapshots.remove(snapshots.size() - 1);
+        addBytes(-last.bytes);
+        // the live variables are not rolled back, next snapshot compares against everything
+        seen.clear();
+        return true;
+    }
+
+    /**
+     * Releases all the snapshots, when the frame ends.
+     */
+    public synchronized void clear() {
+        snapshots.clear();
+        seen.clear();
+        addBytes(-bytes);
+        budget.unregister(this);
+    }
+
+    /**
+     * @return sequence of the oldest snapshot if it can be evicted, the last one is always kept.
+     */
+    synchronized long getEvictableSequence() {
+        return snapshots.size() > 1 ? snapshots.get(0).sequence : Long.MAX_VALUE;
+    }
+
+    /**
+     * Merges the oldest snapshot into the next one.
+     *
+     * @return false if only the last snapshot is left.
+     */
+    synchronized boolean evictOldest() {
+        if (snapshots.size() < 2) {
+            return false;
+        }
+        Snapshot first = snapshots.get(0);
+        Snapshot next = snapshots.get(1);
+        next.materialized = materialize(1);
+        if (!next.complete) {
+            // the copies of the first snapshot still in use now belong to the next one
+            Map<String, Long> sizes = new HashMap<>(first.sizes);
+            sizes.keySet().removeAll(next.removed);
+            sizes.putAll(next.sizes);
+            long merged = 0;
+            for (long size : sizes.values()) {
+                merged += size;
+            }
+            addBytes(merged - next.bytes);
+            next.sizes = sizes;
+            next.bytes = merged;
+            next.complete = true;
+        }
+        snapshots.remove(0);
+        addBytes(-first.bytes);
+        evicted++;
+        return true;
+    }
+
+    private void addBytes(long delta) {
+        bytes += delta;
+        budget.add(delta);
+    }
+
+    private Map<String, Variable> materialize(int index) {
+        Snapshot snapshot = snapshots.get(index);
+        if (snapshot.materialized != null) {
+            return snapshot.materialized;
+        }
+        int from = index;
+        while (snapshots.get(from).materialized == null) {
+            from--;
+        }
+        Map<String, Variable> vars = new HashMap<>(snapshots.get(from).materialized);
+        for (int i = from + 1; i <= index; i++) {
+            Snapshot delta = snapshots.get(i);
+            vars.keySet().removeAll(delta.removed);
+            vars.putAll(delta.changed);
+        }
+        snapshot.materialized = Collections.unmodifiableMap(vars);
+        return snapshot.materialized;
+    }
+
+    /**
+     * @return a hash of json values, that are modified in place, or {@link #UNKNOWN_HASH} for values that can not be
+     * compared so they are always copied.
+     */
+    private static int contentHash(Variable var) {
+        switch (var.type) {
+            case MAP:
+            case LIST:
+                try {
+                    int hash = var.getValue().hashCode();
+                    return hash == UNKNOWN_HASH ? 1 : hash;
+                } catch (RuntimeException | StackOverflowError e) {
+                    return UNKNOWN_HASH;
+                }
+            case XML:
+                return UNKNOWN_HASH;
+            default:
+                return 1; // compared by identity
+        }
+    }
+
+    /**
+     * @return rough heap size in bytes of a copied variable, functions and java objects are not copied.
+     */
+    static long estimateSize(Variable var) {
+        Object value = var.getValue();
+        switch (var.type) {
+            case STRING:
+            case BYTES:
+            case MAP:
+            case LIST:
+                return 16 + estimateSize(value, 0);
+            case XML:
+                return 16 + (value instanceof Node ? estimateSize((Node) value, 0) : 0);
+            default:
+                return 32;
+        }
+    }
+
+    private static long estimateSize(Object value, int depth) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof String) {
+            return 40 + 2L * ((String) value).length();
+        }
+        if (value instanceof byte[]) {
+            return 16 + ((byte[]) value).length;
+        }
+        if (depth > MAX_SIZE_DEPTH) {
+            return 16;
+        }
+        if (value instanceof Map) {
+            long size = 64;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                size += 40 + estimateSize(entry.getKey(), depth + 1) + estimateSize(entry.getValue(), depth + 1);
+            }
+            return size;
+        }
+        if (value instanceof List) {
+            long size = 40;
+            for (Object item : (List<?>) value) {
+                size += 8 + estimateSize(item, depth + 1);
+            }
+            return size;
+        }
+        return 24; // numbers and booleans
+    }
+
+    private static long estimateSize(Node node, int depth) {
+        long size = 96 + (node.getNodeValue() == null ? 0 : 2L * node.getNodeValue().length());
+        if (node.getAttributes() != null) {
+            for (int i = 0; i < node.getAttributes().getLength(); i++) {
+                size += estimateSize(node.getAttributes().item(i), depth + 1);
+            }
+        }
+        if (depth < MAX_SIZE_DEPTH) {
+            NodeList children = node.getChildNodes();
+            for (int i = 0; i < children.getLength(); i++) {
+                size += estimateSize(children.item(i), depth + 1);
+            }
+        }
+        return size;
+    }
+
+    private static class Seen {
+
+        final Variable var;
+        final int hash;
+
+        Seen(Variable var, int hash) {
+            this.var = var;
+            this.hash = hash;
+        }
+    }
+
+    private static class Snapshot {
+
+        final long sequence;
+        final Map<String, Variable> changed;
+        final Set<String> removed;
+        Map<String, Long> sizes;
+        long bytes;
+        // has every variable, not only the changed ones
+        boolean complete;
+        Map<String, Variable> materialized;
+
+        Snapshot(long sequence, Map<String, Variable> changed, Set<String> removed, Map<String, Long> sizes) {
+            this.sequence = sequence;
+            this.changed = changed;
+            this.removed = removed;
+            this.sizes = sizes;
+            for (long size : sizes.values()) {
+                bytes += size;
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package vscode;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timestamp source shared by the hooks.
+ *
+ * Wall clock time is read once, when this class is initialized, later times are derived from {@link System#nanoTime()}
+ * so they are monotonic and cheap to read. Nanos are relative to that origin so they stay well below 2^53 and survive
+ * the trip to javascript numbers.
+ *
+ * @author ivangsa
+ */
+final class EventClock {
+
+    private static final long ORIGIN_MILLIS = System.currentTimeMillis();
+    private static final long ORIGIN_NANOS = System.nanoTime();
+
+    private static final DateTimeFormatter SECONDS_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss").withZone(ZoneId.systemDefault());
+    private static final DateTimeFormatter ZONE_FORMAT = DateTimeFormatter.ofPattern("Z").withZone(ZoneId.systemDefault());
+
+    /* formatted date is cached for the current second, instances are immutable so they can be swapped without locking */
+    private static volatile CachedSecond cachedSecond = new CachedSecond(-1);
+
+    private EventClock() {
+    }
+
+    /**
+     * @return nanos elapsed since the clock origin.
+     */
+    static long nanos() {
+        return System.nanoTime() - ORIGIN_NANOS;
+    }
+
+    /**
+     * @return epoch millis for the given clock nanos.
+     */
+    static long toEpochMillis(long nanos) {
+        return ORIGIN_MILLIS + TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    static long currentTimeMillis() {
+        return toEpochMillis(nanos());
+    }
+
+    /**
+     * @return current time formatted as <code>yyyy-MM-dd'T'HH:mm:ss.SSSZ</code>.
+     */
+    static String currentTime() {
+        long millis = currentTimeMillis();
+        long second = Math.floorDiv(millis, 1000);
+        CachedSecond cached = cachedSecond;
+        if (cached.second != second) {
+            cached = new CachedSecond(second);
+            cachedSecond = cached;
+        }
+        int millisOfSecond = (int) Math.floorMod(millis, 1000);
+        StringBuilder time = new StringBuilder(28).append(cached.prefix).append('.');
+        if (millisOfSecond < 100) {
+            time.append('0');
+        }
+        if (millisOfSecond < 10) {
+            time.append('0');
+        }
+        return time.append(millisOfSecond).append(cached.zone).toString();
+    }
+
+    private static final class CachedSecond {
+        final long second;
+        final String prefix;
+        final String zone;
+
+        CachedSecond(long second) {
+            Instant instant = Instant.ofEpochSecond(Math.max(second, 0));
+            this.second = second;
+            this.prefix = SECONDS_FORMAT.format(instant);
+            this.zone = ZONE_FORMAT.format(instant);
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package vscode;
+
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Writes {@link VSCodeSocketRuntimeHook.Event}s as JSON, encoding UTF-8 straight into the writer buffer.
+ *
+ * @author ivangsa
+ */
+class EventJsonWriter extends EventWriter {
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes(UTF_8);
+
+    private boolean needsComma;
+
+    @Override
+    protected byte[] encodeKey(String name) {
+        return ("\"" + name + "\":").getBytes(UTF_8);
+    }
+
+    @Override
+    protected void beginObject() {
+        writeByte('{');
+        needsComma = false;
+    }
+
+    @Override
+    protected void endObject() {
+        writeByte('}');
+    }
+
+    @Override
+    protected void writeKey(byte[] key) {
+        if (needsComma) {
+            writeByte(',');
+        }
+        writeBytes(key);
+        needsComma = true;
+    }
+
+    @Override
+    protected void writeLong(long value) {
+        writeAscii(Long.toString(value));
+    }
+
+    @Override
+    protected void writeBoolean(boolean value) {
+        writeAscii(value ? "true" : "false");
+    }
+
+    @Override
+    protected void writeMap(Map<String, String> value) {
+        writeByte('{');
+        boolean first = true;
+        for (Map.Entry<String, String> entry : value.entrySet()) {
+            if (!first) {
+                writeByte(',');
+            }
+            writeString(entry.getKey());
+            writeByte(':');
+            writeString(entry.getValue() != null ? entry.getValue() : "");
+            first = false;
+        }
+        writeByte('}');
+    }
+
+    /**
+     * Writes UTF-8 payload bytes as a json string, escaping them with the same rules as {@link #writeString(String)}
+     * without decoding them into chars. Malformed sequences are replaced by U+FFFD like new String(bytes, UTF_8) does.
+     */
+    @Override
+    protected void writePayload(Payload value) {
+        writeByte('"');
+        int prev = escapeUtf8(value.bytes, 0, value.length, 0);
+        escapeUtf8(value.suffix, 0, value.suffix.length, prev);
+        writeByte('"');
+    }
+
+    private int escapeUtf8(byte[] src, int offset, int length, int prev) {
+        int end = offset + length;
+        int i = offset;
+        while (i < end) {
+            if (bytes.length - position < 12) {
+                ensureCapacity(Math.min(end - i, 64 * 1024) + 12);
+            }
+            byte[] b = bytes;
+            int p = position;
+            int limit = Math.min(end, i + (b.length - p) / 6);
+            while (i < limit) {
+                int c = src[i];
+                if (c >= ' ' && c != '"' && c != '\\' && c != '/') {
+                    // printable ascii, the most common case
+                    b[p++] = (byte) c;
+                    i++;
+                    prev = c;
+                    continue;
+                }
+                if (c >= 0) {
+                    p = escapeAscii(b, p, c, prev);
+                    i++;
+                    prev = c;
+                    continue;
+                }
+                int lead = c & 0xFF;
+                int sequence = lead >= 0xF0 ? 4 : lead >= 0xE0 ? 3 : 2;
+                int valid = validLength(src, i, end, lead, sequence);
+                boolean surrogate = valid == sequence && lead == 0xED && (src[i + 1] & 0xFF) >= 0xA0;
+                if (valid < sequence || surrogate) {
+                    // malformed, its longest valid prefix is replaced by U+FFFD
+                    b[p++] = (byte) 0xEF;
+                    b[p++] = (byte) 0xBF;
+                    b[p++] = (byte) 0xBD;
+                    i += valid;
+                    prev = 0xFFFD;
+                    continue;
+                }
+                int cp = lead & (0xFF >> (sequence + 1));
+                for (int k = 1; k < sequence; k++) {
+                    cp = (cp << 6) | (src[i + k] & 0x3F);
+                }
+                if ((cp >= 0x80 && cp < 0xA0) || (cp >= 0x2000 && cp < 0x2100)) {
+                    p = unicodeEscape(b, p, cp);
+                    i += sequence;
+                } else {
+                    System.arraycopy(src, i, b, p, sequence);
+                    p += sequence;
+                    i += sequence;
+                }
+                prev = cp;
+            }
+            position = p;
+        }
+        return prev;
+    }
+
+    /**
+     * @return how many bytes of the sequence starting at i are well formed, at least 1. Overlong forms and code points
+     *         above U+10FFFF are rejected on the second byte, like the JDK decoder does.
+     */
+    private static int validLength(byte[] src, int i, int end, int lead, int sequence) {
+        if (lead < 0xC2 || lead > 0xF4) {
+            return 1;
+        }
+        int k = 1;
+        while (k < sequence && i + k < end) {
+            int next = src[i + k] & 0xFF;
+            int min = 0x80;
+            int max = 0xBF;
+            if (k == 1) {
+                if (lead == 0xE0) {
+                    min = 0xA0;
+                } else if (lead == 0xF0) {
+                    min = 0x90;
+                } else if (lead == 0xF4) {
+                    max = 0x8F;
+                }
+            }
+            if (next < min || next > max) {
+                break;
+            }
+            k++;
+        }
+        return k;
+    }
+
+    private static int escapeAscii(byte[] b, int p, int c, int prev) {
+        if (c == '"' || c == '\\') {
+            b[p++] = '\\';
+            b[p++] = (byte) c;
+        } else if (c == '/') {
+            if (prev == '<') {
+                b[p++] = '\\';
+            }
+            b[p++] = '/';
+        } else if (c == '\b') {
+            b[p++] = '\\';
+            b[p++] = 'b';
+        } else if (c == '\t') {
+            b[p++] = '\\';
+            b[p++] = 't';
+        } else if (c == '\n') {
+            b[p++] = '\\';
+            b[p++] = 'n';
+        } else if (c == '\f') {
+            b[p++] = '\\';
+            b[p++] = 'f';
+        } else if (c == '\r') {
+            b[p++] = '\\';
+            b[p++] = 'r';
+        } else {
+            p = unicodeEscape(b, p, c);
+        }
+        return p;
+    }
+
+    private static int unicodeEscape(byte[] b, int p, int c) {
+        b[p++] = '\\';
+        b[p++] = 'u';
+        b[p++] = HEX[(c >> 12) & 0xF];
+        b[p++] = HEX[(c >> 8) & 0xF];
+        b[p++] = HEX[(c >> 4) & 0xF];
+        b[p++] = HEX[c & 0xF];
+        return p;
+    }
+
+    private void writeAscii(String value) {
+        int len = value.length();
+        ensureCapacity(len);
+        for (int i = 0; i < len; i++) {
+            bytes[position++] = (byte) value.charAt(i);
+        }
+    }
+
+    /**
+     * Escapes and encodes as UTF-8 in a single pass. Control chars, C1 controls and the u2000-u20ff block are written
+     * as unicode escapes, '/' is escaped after '<'.
+     */
+    @Override
+    protected void writeString(String value) {
+        int len = value.length();
+        // escaped chars take up to 6 bytes but ascii is the common case, grow lazily
+        ensureCapacity(len + 2);
+        byte[] b = bytes;
+        int p = position;
+        b[p++] = '"';
+        char prev = 0;
+        for (int i = 0; i < len; i++) {
+            if (b.length - p < 8) {
+                position = p;
+                ensureCapacity(Math.max(len - i, 8) + 8);
+                b = bytes;
+            }
+            char c = value.charAt(i);
+            if (c >= ' ' && c < 0x80 && c != '"' && c != '\\' && c != '/') {
+                b[p++] = (byte) c;
+            } else if (c == '"' || c == '\\') {
+                b[p++] = '\\';
+                b[p++] = (byte) c;
+            } else if (c == '/') {
+                if (prev == '<') {
+                    b[p++] = '\\';
+                }
+                b[p++] = '/';
+            } else if (c == '\b') {
+                b[p++] = '\\';
+                b[p++] = 'b';
+            } else if (c == '\t') {
+                b[p++] = '\\';
+                b[p++] = 't';
+            } else if (c == '\n') {
+                b[p++] = '\\';
+                b[p++] = 'n';
+            } else if (c == '\f') {
+                b[p++] = '\\';
+                b[p++] = 'f';
+            } else if (c == '\r') {
+                b[p++] = '\\';
+                b[p++] = 'r';
+            } else if (c < ' ' || (c >= 0x80 && c < 0xA0) || (c >= 0x2000 && c < 0x2100)) {
+                b[p++] = '\\';
+                b[p++] = 'u';
+                b[p++] = HEX[(c >> 12) & 0xF];
+                b[p++] = HEX[(c >> 8) & 0xF];
+                b[p++] = HEX[(c >> 4) & 0xF];
+                b[p++] = HEX[c & 0xF];
+            } else if (c < 0x800) {
+                b[p++] = (byte) (0xC0 | (c >> 6));
+                b[p++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, value.charAt(++i));
+                b[p++] = (byte) (0xF0 | (cp >> 18));
+                b[p++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                b[p++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                b[p++] = (byte) (0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                b[p++] = '?'; // unpaired surrogate, same as String.getBytes(UTF_8)
+            } else {
+                b[p++] = (byte) (0xE0 | (c >> 12));
+                b[p++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                b[p++] = (byte) (0x80 | (c & 0x3F));
+            }
+            prev = c;
+        }
+        b[p++] = '"';
+        position = p;
+    }
+}
@@ -0,0 +1,164 @@
+package vscode;
+
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Writes {@link VSCodeSocketRuntimeHook.Event}s as MessagePack maps, using only the str, int, bool and map types.
+ *
+ * @author ivangsa
+ */
+class EventMsgPackWriter extends EventWriter {
+
+    private int mapHeaderPosition;
+    private int mapSize;
+
+    @Override
+    protected byte[] encodeKey(String name) {
+        byte[] utf8 = name.getBytes(UTF_8);
+        byte[] key = new byte[utf8.length + 1];
+        key[0] = (byte) (0xa0 | utf8.length); // fixstr, field names are shorter than 32 bytes
+        System.arraycopy(utf8, 0, key, 1, utf8.length);
+        return key;
+    }
+
+    @Override
+    protected void beginObject() {
+        // map16 header, size is patched in endObject
+        mapHeaderPosition = position;
+        mapSize = 0;
+        ensureCapacity(3);
+        position += 3;
+    }
+
+    @Override
+    protected void endObject() {
+        bytes[mapHeaderPosition] = (byte) 0xde;
+        bytes[mapHeaderPosition + 1] = (byte) (mapSize >> 8);
+        bytes[mapHeaderPosition + 2] = (byte) mapSize;
+    }
+
+    @Override
+    protected void writeKey(byte[] key) {
+        writeBytes(key);
+        mapSize++;
+    }
+
+    @Override
+    protected void writeLong(long value) {
+        if (value >= 0 && value < 128) {
+            writeByte((int) value);
+        } else if (value >= -32 && value < 0) {
+            writeByte((int) value);
+        } else {
+            ensureCapacity(9);
+            bytes[position++] = (byte) 0xd3;
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                bytes[position++] = (byte) (value >> shift);
+            }
+        }
+    }
+
+    @Override
+    protected void writeBoolean(boolean value) {
+        writeByte(value ? 0xc3 : 0xc2);
+    }
+
+    @Override
+    protected void writeMap(Map<String, String> value) {
+        int size = value.size();
+        if (size < 16) {
+            writeByte(0x80 | size);
+        } else {
+            writeByte(0xdf);
+            writeInt(size);
+        }
+        for (Map.Entry<String, String> entry : value.entrySet()) {
+            writeString(entry.getKey());
+            writeString(entry.getValue() != null ? entry.getValue() : "");
+        }
+    }
+
+    @Override
+    protected void writePayload(Payload value) {
+        writeStringHeader(value.size());
+        writeBytes(value.bytes, 0, value.length);
+        writeBytes(value.suffix);
+    }
+
+    @Override
+    protected void writeString(String value) {
+        int length = utf8Length(value);
+        writeStringHeader(length);
+        ensureCapacity(length);
+        byte[] b = bytes;
+        int p = position;
+        int len = value.length();
+        for (int i = 0; i < len; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                b[p++] = (byte) c;
+            } else if (c < 0x800) {
+                b[p++] = (byte) (0xC0 | (c >> 6));
+                b[p++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, value.charAt(++i));
+                b[p++] = (byte) (0xF0 | (cp >> 18));
+                b[p++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                b[p++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                b[p++] = (byte) (0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                b[p++] = '?';
+            } else {
+                b[p++] = (byte) (0xE0 | (c >> 12));
+                b[p++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                b[p++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        position = p;
+    }
+
+    private void writeStringHeader(int length) {
+        if (length < 32) {
+            writeByte(0xa0 | length);
+        } else if (length < 256) {
+            writeByte(0xd9);
+            writeByte(length);
+        } else if (length < 65536) {
+            writeByte(0xda);
+            writeByte(length >> 8);
+            writeByte(length);
+        } else {
+            writeByte(0xdb);
+            writeInt(length);
+        }
+    }
+
+    private void writeInt(int value) {
+        ensureCapacity(4);
+        bytes[position++] = (byte) (value >> 24);
+        bytes[position++] = (byte) (value >> 16);
+        bytes[position++] = (byte) (value >> 8);
+        bytes[position++] = (byte) value;
+    }
+
+    private static int utf8Length(String value) {
+        int len = value.length();
+        int length = len;
+        for (int i = 0; i < len; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80) {
+                if (c < 0x800) {
+                    length += 1;
+                } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    length += 2;
+                    i++;
+                } else if (!Character.isSurrogate(c)) {
+                    length += 2;
+                }
+            }
+        }
+        return length;
+    }
+}
@@ -0,0 +1,33 @@
+package vscode;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Where {@link EventSender} writes encoded events. Only used from the sender thread unless stated otherwise.
+ *
+ * @author ivangsa
+ */
+interface EventOutput {
+
+    /**
+     * Opens the output if it is not open yet.
+     *
+     * @return false if it is not available, opening may be retried later.
+     */
+    boolean open();
+
+    /**
+     * Writes all the buffers, in order. Writes are never partially failed, buffers are either written, kept to be
+     * written later or discarded as a whole.
+     */
+    void write(ByteBuffer... buffers);
+
+    /**
+     * @return true if there are writes waiting for the output to become available. Can be called from any thread.
+     */
+    default boolean hasPending() {
+        return false;
+    }
+
+    void close();
+}
@@ -0,0 +1,68 @@
+package vscode;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.zip.GZIPInputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Sends events recorded by the file sink (<code>-Dvscode.sinks=file:events.ndjson.gz</code>) to the IDE, as if the
+ * run was happening now.
+ *
+ * <pre>java -cp vscode.jar vscode.EventReplay &lt;file&gt; [port] [host]</pre>
+ *
+ * Port defaults to <code>vscode.port</code>.
+ *
+ * @author ivangsa
+ */
+public class EventReplay {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: EventReplay <file> [port] [host]");
+            System.exit(1);
+        }
+        String file = args[0];
+        int port = Integer.parseInt(args.length > 1 ? args[1] : System.getProperty("vscode.port"));
+        String host = args.length > 2 ? args[2] : System.getProperty("vscode.host", "localhost");
+        long events = replay(file, host, port);
+        System.out.println("Sent " + events + " events from " + file + " to " + host + ":" + port);
+    }
+
+    static long replay(String file, String host, int port) throws IOException {
+        long events = 0;
+        try (InputStream in = open(file);
+                BufferedReader reader = new BufferedReader(new InputStreamReader(in, UTF_8));
+                Socket socket = new Socket(host, port);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64 * 1024))) {
+            out.write(EventSender.MAGIC);
+            out.write(EventSender.PROTOCOL_VERSION);
+            out.write(EventSender.Protocol.JSON.encoding);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                byte[] frame = line.getBytes(UTF_8);
+                out.writeInt(frame.length);
+                out.write(frame);
+                events++;
+            }
+            out.flush();
+        }
+        return events;
+    }
+
+    private static InputStream open(String file) throws IOException {
+        InputStream in = Files.newInputStream(Paths.get(file));
+        return file.endsWith(".gz") ? new GZIPInputStream(in, 64 * 1024) : in;
+    }
+}
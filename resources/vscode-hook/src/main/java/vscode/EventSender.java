@@ -0,0 +1,402 @@
+package vscode;
+
+import org.slf4j.LoggerFactory;
+
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * {@link EventSink} that encodes and writes {@link VSCodeSocketRuntimeHook.Event}s from a dedicated thread, to the IDE
+ * socket, stdout or a file.
+ *
+ * Karate worker threads only pay for an enqueue into a bounded lock-free queue, serialization and socket writes
+ * happen in the sender thread which coalesces events into large writes, flushing when the batch buffer is full or
+ * every <code>vscode.flush.millis</code>.
+ *
+ * With <code>vscode.protocol</code> set to <code>json</code> (default) or <code>msgpack</code> the connection starts
+ * with a preamble announcing the protocol version and encoding: the 'KIDE' magic bytes, one byte for the version and
+ * one byte for the encoding (0 json, 1 msgpack). Each event is then sent as a frame prefixed by its length as a 4 bytes
+ * big endian int. With <code>legacy</code> json events are written back to back without any delimiter. Stdout and
+ * file sinks always write json lines.
+ *
+ * Framed protocols can also use dictionary encoding of repeated fields with <code>vscode.dictionary=true</code>, see
+ * {@link EventWriter}.
+ *
+ * In framed protocols http payloads are sent as attachments: the event is followed by a frame with the raw payload
+ * bytes, written straight from the body byte array, so payloads are never decoded, escaped or copied into Strings.
+ *
+ * Socket connection, reconnection and spilling while the IDE is unreachable are handled by {@link EventTransport},
+ * streams by {@link StreamOutput}.
+ *
+ * @author ivangsa
+ */
+class EventSender implements EventSink, Runnable {
+
+    private org.slf4j.Logger log = LoggerFactory.getLogger(this.getClass());
+
+    /**
+     * What to do when the queue is full.
+     */
+    enum OverflowPolicy {
+        /* worker threads wait until there is room in the queue */
+        BLOCK,
+        /* payload and headers are discarded from http events, events are still queued up to twice the capacity */
+        DROP_PAYLOAD,
+        /* events are discarded */
+        DROP_EVENT
+    }
+
+    /**
+     * Wire protocol used to send events to the IDE.
+     */
+    enum Protocol {
+        LEGACY(-1), JSON(0), MSGPACK(1), NDJSON(-1);
+
+        final int encoding;
+
+        Protocol(int encoding) {
+            this.encoding = encoding;
+        }
+
+        boolean isFramed() {
+            return encoding >= 0;
+        }
+
+        EventWriter newWriter() {
+            return this == MSGPACK ? new EventMsgPackWriter() : new EventJsonWriter();
+        }
+    }
+
+    static final byte[] MAGIC = {'K', 'I', 'D', 'E'};
+    static final int PROTOCOL_VERSION = 1;
+
+    static final String PROTOCOL = "vscode.protocol";
+    static final String DICTIONARY = "vscode.dictionary";
+    static final String CAPACITY = "vscode.queue.capacity";
+    static final String OVERFLOW = "vscode.queue.overflow";
+    static final String FLUSH_BYTES = "vscode.flush.bytes";
+    static final String FLUSH_MILLIS = "vscode.flush.millis";
+
+    private static final int WAKE_UP_THRESHOLD = 256;
+
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+    private final long flushNanos;
+    private final Protocol protocol;
+    private final EventWriter writer;
+    private final ByteBuffer batch;
+    private final ByteBuffer[][] frames = new ByteBuffer[3][];
+    private final ByteBuffer lineSeparator = ByteBuffer.wrap(new byte[] {'\n'});
+    private final EventOutput output;
+    private final String threadName;
+
+    private final Queue<VSCodeSocketRuntimeHook.Event> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile long written;
+    private volatile boolean flushRequested;
+    private volatile boolean running;
+
+    private Thread thread;
+    private long polled;
+    private long lastFlush;
+
+    /**
+     * Sender for the IDE socket, using the protocol set in <code>vscode.protocol</code>.
+     */
+    static EventSender socket(String host, int port) {
+        Protocol protocol = Protocol.valueOf(System.getProperty(PROTOCOL, Protocol.JSON.name()).toUpperCase());
+        return new EventSender("vscode-event-sender", protocol, handshake -> new EventTransport(host != null ? host : "localhost", port, handshake));
+    }
+
+    static EventSender stdout() {
+        return new EventSender("vscode-event-stdout", Protocol.NDJSON, handshake -> new StreamOutput(() -> new FilterOutputStream(System.out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush(); // never close stdout
+            }
+        }));
+    }
+
+    static EventSender file(String file) {
+        return new EventSender("vscode-event-file", Protocol.NDJSON, handshake -> new StreamOutput(() -> {
+            Path path = Paths.get(file);
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            // appended, so runs don't overwrite the events recorded by previous ones, gzip members can be concatenated
+            OutputStream out = new FileOutputStream(path.toFile(), true);
+            return file.endsWith(".gz") ? new GZIPOutputStream(out, 64 * 1024) : out;
+        }));
+    }
+
+    EventSender(String threadName, Protocol protocol, Function<Supplier<ByteBuffer>, EventOutput> output) {
+        this.threadName = threadName;
+        this.capacity = Integer.getInteger(CAPACITY, 8192);
+        this.overflowPolicy = OverflowPolicy.valueOf(System.getProperty(OVERFLOW, OverflowPolicy.BLOCK.name()).toUpperCase());
+        this.flushNanos = TimeUnit.MILLISECONDS.toNanos(Long.getLong(FLUSH_MILLIS, 50));
+        this.protocol = protocol;
+        this.writer = protocol.newWriter();
+        if (protocol.isFramed() && Boolean.getBoolean(DICTIONARY)) {
+            writer.useDictionary();
+        }
+        if (protocol.isFramed()) {
+            writer.usePayloadAttachments();
+        }
+        int batchSize = Integer.getInteger(FLUSH_BYTES, 64 * 1024);
+        // stream sinks write whole lines with one call from a heap array, sockets write direct buffers without copies
+        this.batch = protocol == Protocol.NDJSON ? ByteBuffer.allocate(batchSize) : ByteBuffer.allocateDirect(batchSize);
+        this.output = output.apply(this::handshake);
+    }
+
+    /**
+     * Starts the sender thread. The output is opened right away, if the IDE is not reachable events are spilled until
+     * a later reconnection succeeds.
+     */
+    @Override
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        output.open();
+        running = true;
+        thread = new Thread(this, threadName);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Enqueues an event to be sent, only blocks when the queue is full and the overflow policy is BLOCK.
+     */
+    @Override
+    public void send(VSCodeSocketRuntimeHook.Event event) {
+        if (!running) {
+            return;
+        }
+        int queued = size.incrementAndGet();
+        if (queued > capacity) {
+            if (overflowPolicy == OverflowPolicy.DROP_EVENT) {
+                size.decrementAndGet();
+                dropped.incrementAndGet();
+                return;
+            }
+            if (overflowPolicy == OverflowPolicy.DROP_PAYLOAD && queued <= capacity * 2) {
+                event = event.withoutPayload(); // events are shared with other sinks
+            } else {
+                size.decrementAndGet();
+                awaitRoom();
+                size.incrementAndGet();
+            }
+        }
+        queue.offer(event);
+        enqueued.incrementAndGet();
+        if (queued == WAKE_UP_THRESHOLD) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private void awaitRoom() {
+        while (running && size.get() >= capacity) {
+            LockSupport.unpark(thread);
+            LockSupport.parkNanos(100_000);
+        }
+    }
+
+    /**
+     * Waits until every event enqueued so far has been written to the socket.
+     */
+    void flush(long timeoutMillis) {
+        long target = enqueued.get();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (running && written < target && System.nanoTime() < deadline) {
+            flushRequested = true;
+            LockSupport.unpark(thread);
+            LockSupport.parkNanos(1_000_000);
+        }
+    }
+
+    /**
+     * Flushes pending events, waits for spilled events to be replayed, stops the sender thread and closes the socket.
+     */
+    @Override
+    public synchronized void close(long timeoutMillis) {
+        if (!running) {
+            return;
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        flush(timeoutMillis);
+        while (output.hasPending() && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(10_000_000);
+        }
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        output.close();
+        if (dropped.get() > 0) {
+            log.debug("VSCodeHook dropped {} events", dropped.get());
+        }
+    }
+
+    @Override
+    public void run() {
+        lastFlush = System.nanoTime();
+        while (running) {
+            drain();
+            if (batch.position() > 0 && (flushRequested || System.nanoTime() - lastFlush >= flushNanos)) {
+                write();
+            }
+            if (batch.position() == 0) {
+                written = polled;
+                flushRequested = false;
+            }
+            if (queue.isEmpty()) {
+                if (output.hasPending()) {
+                    output.open();
+                }
+                LockSupport.parkNanos(this, flushNanos);
+            }
+        }
+        drain();
+        write();
+        written = polled;
+    }
+
+    private void drain() {
+        VSCodeSocketRuntimeHook.Event event;
+        while ((event = queue.poll()) != null) {
+            size.decrementAndGet();
+            polled++;
+            try {
+                int count = 0;
+                ByteBuffer definitions = writer.writeDefinitions(event);
+                if (definitions != null) {
+                    // copied, the event is encoded into the same writer buffer
+                    ByteBuffer copy = ByteBuffer.allocate(definitions.remaining()).put(definitions);
+                    frames[count++] = new ByteBuffer[] {(ByteBuffer) copy.flip()};
+                }
+                frames[count++] = new ByteBuffer[] {writer.write(event)};
+                if (event.payload != null && writer.attachesPayloads()) {
+                    Payload payload = event.payload;
+                    frames[count++] = new ByteBuffer[] {ByteBuffer.wrap(payload.bytes, 0, payload.length), ByteBuffer.wrap(payload.suffix)};
+                }
+                append(frames, count);
+            } catch (Exception e) {
+                log.debug("VSCodeHook error", e);
+            } finally {
+                Arrays.fill(frames, null); // don't retain payloads
+            }
+        }
+    }
+
+    /**
+     * Appends the frames of one event to the batch: its DEFINE event, the event itself and its payload attachment. Each
+     * frame is made of the given buffers. Frames of an event are always written, spilled or dropped together, so the
+     * IDE never gets an attachment or a definition without its event.
+     */
+    private void append(ByteBuffer[][] frames, int count) {
+        // length header, line separator or nothing for legacy json
+        boolean separated = protocol == Protocol.NDJSON;
+        int overhead = protocol.isFramed() ? 4 : separated ? lineSeparator.capacity() : 0;
+        int length = 0;
+        for (int i = 0; i < count; i++) {
+            length += remaining(frames[i]) + overhead;
+        }
+        if (length > batch.remaining()) {
+            write();
+        }
+        if (length <= batch.remaining()) {
+            for (int i = 0; i < count; i++) {
+                if (protocol.isFramed()) {
+                    batch.putInt(remaining(frames[i]));
+                }
+                for (ByteBuffer b : frames[i]) {
+                    batch.put(b);
+                }
+                if (separated) {
+                    batch.put(lineSeparator.duplicate());
+                }
+            }
+            return;
+        }
+        // too big for the batch, written with one call together with their headers or line separators
+        int buffers = 0;
+        for (int i = 0; i < count; i++) {
+            buffers += frames[i].length + (overhead > 0 ? 1 : 0);
+        }
+        ByteBuffer[] gathered = new ByteBuffer[buffers];
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            if (protocol.isFramed()) {
+                gathered[n++] = (ByteBuffer) ByteBuffer.allocate(4).putInt(remaining(frames[i])).flip();
+            }
+            for (ByteBuffer b : frames[i]) {
+                gathered[n++] = b;
+            }
+            if (separated) {
+                gathered[n++] = lineSeparator.duplicate();
+            }
+        }
+        output.write(gathered);
+    }
+
+    private static int remaining(ByteBuffer[] buffers) {
+        int length = 0;
+        for (ByteBuffer b : buffers) {
+            length += b.remaining();
+        }
+        return length;
+    }
+
+    private void write() {
+        batch.flip();
+        if (batch.hasRemaining()) {
+            output.write(batch);
+        }
+        batch.clear();
+        lastFlush = System.nanoTime();
+    }
+
+    /**
+     * First bytes sent on every new connection: the protocol preamble, and a snapshot of the dictionary so events
+     * spilled while disconnected can be resolved by the IDE.
+     */
+    private ByteBuffer handshake() {
+        ByteBuffer dictionary = writer.writeDictionary();
+        int dictionaryLength = dictionary != null ? dictionary.remaining() : 0;
+        ByteBuffer handshake = ByteBuffer.allocate(MAGIC.length + 2 + 4 + dictionaryLength);
+        if (protocol.isFramed()) {
+            handshake.put(MAGIC).put((byte) PROTOCOL_VERSION).put((byte) protocol.encoding);
+            if (dictionary != null) {
+                handshake.putInt(dictionaryLength).put(dictionary);
+            }
+        }
+        handshake.flip();
+        return handshake;
+    }
+}
@@ -0,0 +1,77 @@
+package vscode;
+
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Destination for the events published by {@link VSCodeSocketRuntimeHook}.
+ *
+ * Sinks are selected with <code>vscode.sinks</code>, a comma separated list of:
+ *
+ * <ul>
+ *     <li><code>socket</code>: sends events to the IDE on <code>vscode.port</code> (default when the port is set)</li>
+ *     <li><code>stdout</code>: prints events as json lines</li>
+ *     <li><code>file[:path]</code>: writes events as json lines to a file, gzipped if the path ends with .gz (default
+ *     path <code>target/karate-ide-events.ndjson</code>), they can be sent to the IDE later with {@link EventReplay}</li>
+ *     <li><code>memory[:capacity]</code>: keeps the last events in memory, see {@link MemoryEventSink}</li>
+ * </ul>
+ *
+ * <code>send</code> is called from Karate threads so it must not block nor do any I/O.
+ *
+ * @author ivangsa
+ */
+interface EventSink {
+
+    String SINKS = "vscode.sinks";
+
+    String DEFAULT_FILE = "target/karate-ide-events.ndjson";
+
+    default void start() {
+    }
+
+    void send(VSCodeSocketRuntimeHook.Event event);
+
+    /**
+     * Delivers pending events, waiting up to the timeout, and releases resources. The sink may be started again.
+     */
+    default void close(long timeoutMillis) {
+    }
+
+    static List<EventSink> fromSystemProperties(String host, Integer port) {
+        String sinks = System.getProperty(SINKS, port != null ? "socket" : "");
+        List<EventSink> result = new ArrayList<>();
+        for (String sink : sinks.split(",")) {
+            String name = sink.trim();
+            String argument = null;
+            int colon = name.indexOf(':');
+            if (colon > 0) {
+                argument = name.substring(colon + 1);
+                name = name.substring(0, colon);
+            }
+            if (name.isEmpty()) {
+                continue;
+            }
+            switch (name) {
+                case "socket":
+                    if (port != null) {
+                        result.add(EventSender.socket(host, port));
+                    }
+                    break;
+                case "stdout":
+                    result.add(EventSender.stdout());
+                    break;
+                case "file":
+                    result.add(EventSender.file(argument != null ? argument : DEFAULT_FILE));
+                    break;
+                case "memory":
+                    result.add(new MemoryEventSink(argument != null ? Integer.parseInt(argument) : MemoryEventSink.DEFAULT_CAPACITY));
+                    break;
+                default:
+                    LoggerFactory.getLogger(EventSink.class).warn("VSCodeHook unknown event sink: {}", name);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,185 @@
+package vscode;
+
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Delivers encoded events to the IDE socket, surviving the IDE being unreachable.
+ *
+ * When the socket can not be opened or a write fails, events are appended to a {@link SpillFile} of up to
+ * <code>vscode.spill.maxBytes</code> and the connection is retried with exponential backoff, up to
+ * <code>vscode.reconnect.maxMillis</code> between attempts. On every new connection the handshake (protocol preamble
+ * and dictionary snapshot) is sent first, then spilled events are replayed in order before any new event.
+ *
+ * Buffers are written or spilled as a whole, so frames are never split across connections. Not thread safe, only used
+ * from the sender thread.
+ *
+ * @author ivangsa
+ */
+class EventTransport implements EventOutput {
+
+    private org.slf4j.Logger log = LoggerFactory.getLogger(this.getClass());
+
+    static final String SPILL_MAX_BYTES = "vscode.spill.maxBytes";
+    static final String RECONNECT_MAX_MILLIS = "vscode.reconnect.maxMillis";
+
+    private static final long INITIAL_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final InetSocketAddress address;
+    private final Supplier<ByteBuffer> handshake;
+    private final long spillMaxBytes;
+    private final long maxBackoffNanos;
+
+    private SocketChannel channel;
+    private SpillFile spill;
+    private boolean spillFailed;
+    private volatile int spilledBytes;
+    private long droppedBytes;
+    private long backoffNanos = INITIAL_BACKOFF_NANOS;
+    private long nextAttempt = System.nanoTime();
+
+    EventTransport(String host, int port, Supplier<ByteBuffer> handshake) {
+        this.address = new InetSocketAddress(host, port);
+        this.handshake = handshake;
+        this.spillMaxBytes = Long.getLong(SPILL_MAX_BYTES, 64 * 1024 * 1024);
+        this.maxBackoffNanos = TimeUnit.MILLISECONDS.toNanos(Long.getLong(RECONNECT_MAX_MILLIS, 5000));
+    }
+
+    /**
+     * Opens the connection if it is not open and the backoff delay has elapsed, then replays spilled events.
+     *
+     * @return true if connected.
+     */
+    @Override
+    public boolean open() {
+        if (channel != null) {
+            return true;
+        }
+        long now = System.nanoTime();
+        if (now - nextAttempt < 0) {
+            return false;
+        }
+        SocketChannel client = null;
+        try {
+            client = SocketChannel.open();
+            client.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+            client.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            boolean connected = client.connect(address);
+            log.debug("SocketChannel connection: {}", connected);
+            writeFully(client, handshake.get());
+            if (spill != null && spill.size() > 0) {
+                log.debug("VSCodeHook replaying {} spilled bytes", spill.size());
+                spill.replay(client);
+                spilledBytes = 0;
+            }
+            channel = client;
+            backoffNanos = INITIAL_BACKOFF_NANOS;
+            return true;
+        } catch (IOException e) {
+            log.debug("VSCodeHook connection to {} failed, retrying in {}ms: {}", address, TimeUnit.NANOSECONDS.toMillis(backoffNanos), e.getMessage());
+            closeQuietly(client);
+            nextAttempt = now + backoffNanos;
+            backoffNanos = Math.min(backoffNanos * 2, maxBackoffNanos);
+            return false;
+        }
+    }
+
+    /**
+     * Writes the buffers to the socket, or spills them if the IDE is not reachable.
+     */
+    @Override
+    public void write(ByteBuffer... buffers) {
+        if (open()) {
+            int[] positions = new int[buffers.length];
+            for (int i = 0; i < buffers.length; i++) {
+                positions[i] = buffers[i].position();
+            }
+            try {
+                writeFully(channel, buffers);
+                return;
+            } catch (IOException e) {
+                log.debug("VSCodeHook connection lost: {}", e.getMessage());
+                closeQuietly(channel);
+                channel = null;
+                nextAttempt = System.nanoTime();
+                for (int i = 0; i < buffers.length; i++) {
+                    buffers[i].position(positions[i]);
+                }
+            }
+        }
+        spill(buffers);
+    }
+
+    private void spill(ByteBuffer... buffers) {
+        if (spill == null && !spillFailed && spillMaxBytes > 0) {
+            try {
+                spill = new SpillFile(spillMaxBytes);
+            } catch (IOException e) {
+                log.debug("VSCodeHook error", e);
+                spillFailed = true;
+            }
+        }
+        if (spill == null || !spill.append(buffers)) {
+            for (ByteBuffer b : buffers) {
+                droppedBytes += b.remaining();
+                b.position(b.limit());
+            }
+            return;
+        }
+        spilledBytes = spill.size();
+    }
+
+    /**
+     * @return true if there are spilled events waiting to be replayed. Can be called from any thread.
+     */
+    @Override
+    public boolean hasPending() {
+        return spilledBytes > 0;
+    }
+
+    @Override
+    public void close() {
+        closeQuietly(channel);
+        channel = null;
+        if (spill != null) {
+            if (spill.size() > 0) {
+                droppedBytes += spill.size();
+            }
+            closeQuietly(spill);
+            spill = null;
+            spilledBytes = 0;
+        }
+        if (droppedBytes > 0) {
+            log.debug("VSCodeHook could not deliver {} bytes of events", droppedBytes);
+        }
+    }
+
+    private static void writeFully(SocketChannel client, ByteBuffer... buffers) throws IOException {
+        long remaining = 0;
+        for (ByteBuffer b : buffers) {
+            remaining += b.remaining();
+        }
+        while (remaining > 0) {
+            remaining -= client.write(buffers);
+        }
+    }
+
+    private void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            log.debug("VSCodeHook error", e);
+        }
+    }
+}
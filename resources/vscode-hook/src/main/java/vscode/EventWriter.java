@@ -0,0 +1,268 @@
+package vscode;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Writes {@link VSCodeSocketRuntimeHook.Event}s field by field into a reusable byte buffer, without reflection.
+ *
+ * Subclasses implement the wire encoding. Null fields are skipped. Instances are not thread safe, each sender owns
+ * its own writer.
+ *
+ * With dictionary encoding enabled, fields that repeat on most events (thread, currentDir, rootFeature, feature,
+ * resource and caller) are written as small integer ids. Values seen for the first time are announced with a DEFINE
+ * event, <code>{"eventType":"DEFINE","dictionary":{"&lt;id&gt;":"&lt;value&gt;"}}</code>, which must be sent before the event
+ * referring to them.
+ *
+ * With payload attachments enabled, http payloads are not written inside the event. The event only carries their
+ * <code>payloadSize</code> and the sender writes the raw payload bytes as the next frame.
+ *
+ * @author ivangsa
+ */
+abstract class EventWriter {
+
+    private static final int INITIAL_SIZE = 8 * 1024;
+    private static final int MAX_RETAINED_SIZE = 1024 * 1024;
+    private static final int MAX_DICTIONARY_SIZE = 64 * 1024;
+
+    private static final String[] FIELD_NAMES = {"timestamp", "eventType", "thread", "currentDir", "rootFeature",
+            "rootScenario", "feature", "scenario", "isOutline", "isDinamic", "name", "resource", "line", "caller",
+            "callDepth", "url", "method", "status", "failureMessage", "headers", "payload", "dictionary", "startNanos",
+            "endNanos", "payloadSize"};
+    private static final int TIMESTAMP = 0, EVENT_TYPE = 1, THREAD = 2, CURRENT_DIR = 3, ROOT_FEATURE = 4,
+            ROOT_SCENARIO = 5, FEATURE = 6, SCENARIO = 7, IS_OUTLINE = 8, IS_DINAMIC = 9, NAME = 10, RESOURCE = 11,
+            LINE = 12, CALLER = 13, CALL_DEPTH = 14, URL = 15, METHOD = 16, STATUS = 17, FAILURE_MESSAGE = 18,
+            HEADERS = 19, PAYLOAD = 20, DICTIONARY = 21, START_NANOS = 22, END_NANOS = 23,
+            PAYLOAD_SIZE = 24;
+
+    private final byte[][] keys = new byte[FIELD_NAMES.length][];
+
+    private Map<String, Integer> dictionary;
+    private boolean attachPayloads;
+    private final Map<String, String> definitions = new LinkedHashMap<>();
+
+    protected byte[] bytes = new byte[INITIAL_SIZE];
+    protected int position;
+
+    EventWriter() {
+        for (int i = 0; i < FIELD_NAMES.length; i++) {
+            keys[i] = encodeKey(FIELD_NAMES[i]);
+        }
+    }
+
+    void useDictionary() {
+        dictionary = new HashMap<>();
+    }
+
+    void usePayloadAttachments() {
+        attachPayloads = true;
+    }
+
+    boolean attachesPayloads() {
+        return attachPayloads;
+    }
+
+    /**
+     * @return a buffer with a DEFINE event for the values of this event not seen before, or null when there are none.
+     *         Only valid until the next call to a write method.
+     */
+    ByteBuffer writeDefinitions(VSCodeSocketRuntimeHook.Event event) {
+        if (dictionary == null) {
+            return null;
+        }
+        definitions.clear();
+        define(event.thread);
+        define(event.currentDir);
+        define(event.rootFeature);
+        define(event.feature);
+        define(event.resource);
+        define(event.caller);
+        if (definitions.isEmpty()) {
+            return null;
+        }
+        return writeDefineEvent();
+    }
+
+    /**
+     * @return a new buffer with a DEFINE event for every value in the dictionary, or null when there are none. Used to
+     *         restore the dictionary on a new connection. Buffers returned by the other write methods stay valid.
+     */
+    ByteBuffer writeDictionary() {
+        if (dictionary == null || dictionary.isEmpty()) {
+            return null;
+        }
+        definitions.clear();
+        for (Map.Entry<String, Integer> entry : dictionary.entrySet()) {
+            definitions.put(Integer.toString(entry.getValue()), entry.getKey());
+        }
+        byte[] current = bytes;
+        int currentPosition = position;
+        bytes = new byte[INITIAL_SIZE];
+        try {
+            return writeDefineEvent();
+        } finally {
+            bytes = current;
+            position = currentPosition;
+        }
+    }
+
+    private ByteBuffer writeDefineEvent() {
+        reset();
+        beginObject();
+        field(EVENT_TYPE, VSCodeSocketRuntimeHook.EventType.DEFINE.name());
+        field(DICTIONARY, definitions);
+        endObject();
+        return ByteBuffer.wrap(bytes, 0, position);
+    }
+
+    private void define(String value) {
+        if (value != null && dictionary.size() < MAX_DICTIONARY_SIZE && !dictionary.containsKey(value)) {
+            int id = dictionary.size();
+            dictionary.put(value, id);
+            definitions.put(Integer.toString(id), value);
+        }
+    }
+
+    /**
+     * @return a buffer with the encoded event, only valid until the next call to a write method.
+     */
+    ByteBuffer write(VSCodeSocketRuntimeHook.Event event) {
+        reset();
+        beginObject();
+        field(TIMESTAMP, event.timestamp);
+        field(START_NANOS, event.startNanos);
+        field(END_NANOS, event.endNanos);
+        field(EVENT_TYPE, event.eventType != null ? event.eventType.name() : null);
+        reference(THREAD, event.thread);
+        reference(CURRENT_DIR, event.currentDir);
+        reference(ROOT_FEATURE, event.rootFeature);
+        field(ROOT_SCENARIO, event.rootScenario);
+        reference(FEATURE, event.feature);
+        field(SCENARIO, event.scenario);
+        field(IS_OUTLINE, event.isOutline);
+        field(IS_DINAMIC, event.isDinamic);
+        field(NAME, event.name);
+        reference(RESOURCE, event.resource);
+        field(LINE, event.line);
+        reference(CALLER, event.caller);
+        field(CALL_DEPTH, event.callDepth);
+        field(URL, event.url);
+        field(METHOD, event.method);
+        field(STATUS, event.status);
+        field(FAILURE_MESSAGE, event.failureMessage);
+        field(HEADERS, event.headers);
+        if (attachPayloads) {
+            field(PAYLOAD_SIZE, event.payload != null ? Long.valueOf(event.payload.size()) : null);
+        } else {
+            field(PAYLOAD, event.payload);
+        }
+        endObject();
+        return ByteBuffer.wrap(bytes, 0, position);
+    }
+
+    private void reset() {
+        if (bytes.length > MAX_RETAINED_SIZE) {
+            bytes = new byte[INITIAL_SIZE];
+        }
+        position = 0;
+    }
+
+    private void reference(int key, String value) {
+        Integer id = dictionary != null && value != null ? dictionary.get(value) : null;
+        if (id != null) {
+            writeKey(keys[key]);
+            writeLong(id);
+        } else {
+            field(key, value);
+        }
+    }
+
+    private void field(int key, String value) {
+        if (value != null) {
+            writeKey(keys[key]);
+            writeString(value);
+        }
+    }
+
+    private void field(int key, Boolean value) {
+        if (value != null) {
+            writeKey(keys[key]);
+            writeBoolean(value);
+        }
+    }
+
+    private void field(int key, Long value) {
+        if (value != null) {
+            writeKey(keys[key]);
+            writeLong(value);
+        }
+    }
+
+    private void field(int key, int value) {
+        writeKey(keys[key]);
+        writeLong(value);
+    }
+
+    private void field(int key, Payload value) {
+        if (value != null) {
+            writeKey(keys[key]);
+            writePayload(value);
+        }
+    }
+
+    private void field(int key, Map<String, String> value) {
+        if (value != null) {
+            writeKey(keys[key]);
+            writeMap(value);
+        }
+    }
+
+    /**
+     * Encodes a field name once, the result is passed back to {@link #writeKey(byte[])} for every event.
+     */
+    protected abstract byte[] encodeKey(String name);
+
+    protected abstract void beginObject();
+
+    protected abstract void endObject();
+
+    protected abstract void writeKey(byte[] key);
+
+    protected abstract void writeString(String value);
+
+    protected abstract void writeLong(long value);
+
+    protected abstract void writeBoolean(boolean value);
+
+    protected abstract void writeMap(Map<String, String> value);
+
+    /**
+     * Writes the payload bytes, which are UTF-8 text, as a string value.
+     */
+    protected abstract void writePayload(Payload value);
+
+    protected void writeByte(int b) {
+        ensureCapacity(1);
+        bytes[position++] = (byte) b;
+    }
+
+    protected void writeBytes(byte[] b) {
+        writeBytes(b, 0, b.length);
+    }
+
+    protected void writeBytes(byte[] b, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(b, offset, bytes, position, length);
+        position += length;
+    }
+
+    protected void ensureCapacity(int length) {
+        if (position + length > bytes.length) {
+            byte[] grown = new byte[Math.max(bytes.length * 2, position + length)];
+            System.arraycopy(bytes, 0, grown, 0, position);
+            bytes = grown;
+        }
+    }
+}
@@ -4,8 +4,18 @@ import com.intuit.karate.RuntimeHook;
 import com.intuit.karate.core.ScenarioOutline;
 import com.intuit.karate.core.ScenarioRuntime;
 
+import java.util.EnumSet;
+
 public interface ExtendedRuntimeHook extends RuntimeHook {
 
+    /**
+     * Events this hook consumes, {@link VSCodeHook} only dispatches these to it. Read once when the hook is
+     * registered. By default, the callbacks overridden by the hook class.
+     */
+    default EnumSet<HookEvent> getEvents() {
+        return HookEvent.implementedBy(this);
+    }
+
     default String getOutlineName(ScenarioRuntime sr) {
         return sr.scenario.getSection().isOutline()? String.format("[%s:%s] %s", sr.scenario.getSection().getIndex() + 1, sr.scenario.getSection().getScenarioOutline().getLine(), sr.scenario.getSection().getScenarioOutline().getName()) : null;
     }
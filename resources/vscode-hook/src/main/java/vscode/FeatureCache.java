@@ -0,0 +1,366 @@
+package vscode;
+
+import com.intuit.karate.FileUtils;
+import com.intuit.karate.KarateException;
+import com.intuit.karate.Main;
+import com.intuit.karate.Results;
+import com.intuit.karate.Runner;
+import com.intuit.karate.core.Feature;
+import com.intuit.karate.core.FeatureCall;
+import com.intuit.karate.core.FeatureSection;
+import com.intuit.karate.core.ScenarioCall;
+import com.intuit.karate.resource.Resource;
+import com.intuit.karate.resource.ResourceUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import vscode.compatibility.KarateCompatibility;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps parsed features across the runs of {@link KarateTestProcess}, so a run only parses the feature files that
+ * changed since they were last read (by last modified time and length). The classpath is scanned once per process by
+ * karate itself. Karate sets the name of scenarios with a <code>${}</code> placeholder or a backticked name to their
+ * evaluated value while running, features with such scenarios are parsed again for every run so names don't leak
+ * between runs.
+ *
+ * With <code>vscode.cache.calls=true</code> the <code>karate.callSingle()</code> and <code>callonce</code> results are
+ * also kept between runs with the same <code>karate.env</code> and config dir, until a karate-config file, one of the
+ * run features or any feature or js file under the working dir (but the build dir) changes.
+ * <code>karate-config.js</code> is still evaluated for every scenario, as karate does.
+ *
+ * Runs are built like <code>Main.call()</code> does; with <code>vscode.cache.features=false</code>, or when this
+ * karate version is not supported, they are delegated to <code>Main.call()</code>.
+ *
+ * @author ivangsa
+ */
+class FeatureCache {
+
+    static final String CACHE_FEATURES = "vscode.cache.features";
+    static final String CACHE_CALLS = "vscode.cache.calls";
+
+    private static final Logger log = LoggerFactory.getLogger(FeatureCache.class);
+
+    /* package private fields of karate Main and Runner.Builder, null if this karate version does not have them */
+    private static final Field MAIN_PATHS = field(Main.class, "paths");
+    private static final Field MAIN_CLEAN = field(Main.class, "clean");
+    private static final Field MAIN_OUTPUT = field(Main.class, "output");
+    private static final Field MAIN_WORKING_DIR = field(Main.class, "workingDir");
+    private static final Field MAIN_BACKUP_REPORT_DIR = field(Main.class, "backupReportDir");
+    private static final Field MAIN_DRY_RUN = field(Main.class, "dryRun");
+    private static final Field BUILDER_FEATURES = field(Runner.Builder.class, "features");
+
+    private static final boolean SUPPORTED = MAIN_PATHS != null && MAIN_CLEAN != null && MAIN_OUTPUT != null
+            && MAIN_WORKING_DIR != null && MAIN_BACKUP_REPORT_DIR != null && MAIN_DRY_RUN != null
+            && KarateCompatibility.hasFeatureCall() && isListOf(BUILDER_FEATURES, "com.intuit.karate.core.FeatureCall");
+
+    private final boolean cacheFeatures;
+    private final boolean cacheCalls;
+    private final Map<String, Entry> features = new ConcurrentHashMap<>();
+    /* incremented every time a cached feature is parsed again */
+    private final AtomicLong featuresVersion = new AtomicLong();
+    private final Map<String, CallCaches> callCaches = new ConcurrentHashMap<>();
+
+    FeatureCache() {
+        this(Boolean.parseBoolean(System.getProperty(CACHE_FEATURES, "true")), Boolean.getBoolean(CACHE_CALLS));
+    }
+
+    FeatureCache(boolean cacheFeatures, boolean cacheCalls) {
+        this.cacheFeatures = cacheFeatures && SUPPORTED;
+        this.cacheCalls = cacheCalls;
+        if (cacheFeatures && !SUPPORTED) {
+            log.debug("Feature cache not supported by this karate version");
+        }
+    }
+
+    /**
+     * Runs the karate command line, like <code>Main.call()</code>.
+     */
+    void call(Main karateMain) throws Exception {
+        List<String> paths = cacheFeatures ? paths(karateMain) : null;
+        if (paths == null || karateMain.getDebugPort() != -1) {
+            karateMain.call();
+            return;
+        }
+        String output = (String) MAIN_OUTPUT.get(karateMain);
+        if ((Boolean) MAIN_CLEAN.get(karateMain)) {
+            FileUtils.deleteDirectory(new File(output));
+            log.info("deleted directory: {}", output);
+        }
+        File workingDir = workingDir(karateMain);
+        // Runner.path() returns a raw Builder, its setters are called one by one to keep it typed
+        Runner.Builder<?> builder = Runner.path(paths);
+        builder.tags(karateMain.getTags());
+        builder.scenarioName(karateMain.getName());
+        builder.karateEnv(karateMain.getEnv());
+        builder.workingDir(workingDir);
+        builder.buildDir(output);
+        builder.backupReportDir((Boolean) MAIN_BACKUP_REPORT_DIR.get(karateMain));
+        builder.configDir(karateMain.getConfigDir());
+        builder.outputHtmlReport(karateMain.isOutputHtmlReport());
+        builder.outputCucumberJson(karateMain.isOutputCucumberJson());
+        builder.outputJunitXml(karateMain.isOutputJunitXml());
+        builder.dryRun((Boolean) MAIN_DRY_RUN.get(karateMain));
+        builder.hooks(karateMain.createHooks());
+        List<FeatureCall> featureCalls = resolve(workingDir, paths, karateMain.getName());
+        BUILDER_FEATURES.set(builder, featureCalls);
+        if (cacheCalls) {
+            CallCaches caches = callCaches(workingDir, new File(output), karateMain.getEnv(), karateMain.getConfigDir());
+            builder.callSingleCache(caches.callSingle);
+            builder.callOnceCache(caches.callOnce);
+        }
+        Results results = builder.parallel(karateMain.getThreads());
+        if (results.getFailCount() > 0) {
+            // same as Main.call()
+            Exception ke = new KarateException("there are test failures !");
+            StackTraceElement[] newTrace = new StackTraceElement[]{new StackTraceElement(".", ".", ".", -1)};
+            ke.setStackTrace(newTrace);
+            throw ke;
+        }
+    }
+
+    /**
+     * @return the features selected by the karate command line, without line or tag selectors.
+     */
+    List<Feature> features(Main karateMain) throws IllegalAccessException {
+        if (!SUPPORTED) {
+            throw new IllegalStateException("not supported by this karate version");
+        }
+        List<Feature> features = new ArrayList<>();
+        for (FeatureCall featureCall : resolve(workingDir(karateMain), karateMain.getPaths(), null)) {
+            features.add(featureCall.feature);
+        }
+        return features;
+    }
+
+    File workingDir(Main karateMain) throws IllegalAccessException {
+        File workingDir = (File) MAIN_WORKING_DIR.get(karateMain);
+        return workingDir != null ? workingDir : FileUtils.WORKING_DIR;
+    }
+
+    /**
+     * Same as <code>ResourceUtils.findFeatureFiles()</code>, reading features through this cache.
+     */
+    List<FeatureCall> resolve(File workingDir, List<String> paths, String scenarioName) {
+        List<FeatureCall> featureCalls = new ArrayList<>();
+        if (paths == null || paths.isEmpty()) {
+            return featureCalls;
+        }
+        if (paths.size() == 1) {
+            String path = paths.get(0);
+            int callLine = -1;
+            int pos = path.indexOf(".feature:");
+            if (pos != -1) {
+                callLine = Integer.valueOf(path.substring(pos + 9));
+                path = path.substring(0, pos + 8);
+            }
+            String callTag = null;
+            pos = path.indexOf('@');
+            if (pos != -1) {
+                callTag = path.substring(pos);
+                path = path.substring(0, pos);
+            }
+            if (path.endsWith(".feature")) {
+                Resource resource = ResourceUtils.getResource(workingDir, path);
+                featureCalls.add(new FeatureCall(readForRun(resource), callTag, callLine, scenarioName));
+                return featureCalls;
+            }
+        }
+        for (Resource resource : ResourceUtils.findResourcesByExtension(workingDir, "feature", paths)) {
+            featureCalls.add(new FeatureCall(readForRun(resource), null, -1, scenarioName));
+        }
+        return featureCalls;
+    }
+
+    /**
+     * @return the cached feature, only to be read: karate may change it while running.
+     */
+    Feature read(Resource resource) {
+        return entry(resource).feature;
+    }
+
+    /**
+     * @return the cached feature, or a new one if karate changes it while running.
+     */
+    private Feature readForRun(Resource resource) {
+        Entry entry = entry(resource);
+        return entry.evaluatesNames ? Feature.read(resource) : entry.feature;
+    }
+
+    private Entry entry(Resource resource) {
+        String key = resource.getPrefixedPath() + " " + resource.getUri();
+        long lastModified = resource.getLastModified();
+        long length = resource.isFile() ? resource.getFile().length() : -1;
+        Entry entry = features.get(key);
+        if (entry != null && entry.lastModified == lastModified && entry.length == length) {
+            return entry;
+        }
+        Feature feature = Feature.read(resource);
+        if (entry != null) {
+            log.debug("Feature changed: {}", resource.getPrefixedPath());
+            featuresVersion.incrementAndGet();
+        }
+        entry = new Entry(feature, lastModified, length, evaluatesNames(feature));
+        features.put(key, entry);
+        return entry;
+    }
+
+    /**
+     * @return true if karate will set the name of some scenario, like <code>ScenarioRuntime.evaluateScenarioName()</code>
+     * does. Scenarios of outlines are created for every run, so they are not checked.
+     */
+    private static boolean evaluatesNames(Feature feature) {
+        for (FeatureSection section : feature.getSections()) {
+            String name = section.isOutline() ? null : section.getScenario().getName();
+            if (name != null && (name.contains("${") || (name.length() > 1 && name.startsWith("`") && name.endsWith("`")))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private CallCaches callCaches(File workingDir, File output, String env, String configDir) {
+        String dir = configDir == null ? "classpath:" : configDir;
+        if (!dir.endsWith(":") && !dir.endsWith("/")) {
+            dir = dir + "/";
+        }
+        String configSignature = lastModified(workingDir, dir + "karate-config.js") + "," +
+                (env == null ? "" : lastModified(workingDir, dir + "karate-config-" + env + ".js")) + "," +
+                sourcesSignature(workingDir, output);
+        long version = featuresVersion.get();
+        return callCaches.compute(env + " " + dir, (key, caches) -> {
+            if (caches != null && caches.configSignature.equals(configSignature) && caches.featuresVersion == version) {
+                return caches;
+            }
+            if (caches != null) {
+                log.debug("Clearing callSingle and callonce caches for {}", key);
+            }
+            // runs still using the previous caches keep them
+            return new CallCaches(configSignature, version);
+        });
+    }
+
+    private static long lastModified(File workingDir, String path) {
+        try {
+            return ResourceUtils.getResource(workingDir, path).getLastModified();
+        } catch (Exception e) {
+            return 0; // not found
+        }
+    }
+
+    /**
+     * @return the number and last modified times of the feature and js files under the working dir, which callSingle
+     * and callonce may call without reading them through this cache. Hidden dirs, node_modules and the build dir, where
+     * every run writes new reports with js files, are skipped.
+     */
+    private static String sourcesSignature(File workingDir, File output) {
+        Path buildDir = output.toPath().toAbsolutePath().normalize();
+        long[] signature = new long[2];
+        try {
+            Files.walkFileTree(workingDir.toPath(), new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    String name = dir.getFileName() != null ? dir.getFileName().toString() : "";
+                    if (name.startsWith(".") || name.equals("node_modules") || dir.toAbsolutePath().normalize().equals(buildDir)) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    String name = file.getFileName().toString();
+                    if (name.endsWith(".feature") || name.endsWith(".js")) {
+                        signature[0]++;
+                        signature[1] += attrs.lastModifiedTime().toMillis();
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            log.debug("Can not scan {} for changes: {}", workingDir, e.getMessage());
+        }
+        return signature[0] + ":" + signature[1];
+    }
+
+    private static List<String> paths(Main karateMain) throws IllegalAccessException {
+        Object paths = MAIN_PATHS.get(karateMain);
+        if (!(paths instanceof List)) {
+            return null;
+        }
+        List<String> list = new ArrayList<>();
+        for (Object path : (List<?>) paths) {
+            list.add((String) path);
+        }
+        return list;
+    }
+
+    /**
+     * @return true if the field is a <code>List</code> of the given element type.
+     */
+    private static boolean isListOf(Field field, String elementType) {
+        if (field == null || field.getType() != List.class || !(field.getGenericType() instanceof ParameterizedType)) {
+            return false;
+        }
+        Type[] arguments = ((ParameterizedType) field.getGenericType()).getActualTypeArguments();
+        return arguments.length == 1 && arguments[0].getTypeName().equals(elementType);
+    }
+
+    private static Field field(Class<?> type, String name) {
+        try {
+            Field field = type.getDeclaredField(name);
+            field.setAccessible(true);
+            return field;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static class Entry {
+        final Feature feature;
+        final long lastModified;
+        final long length;
+        final boolean evaluatesNames;
+
+        Entry(Feature feature, long lastModified, long length, boolean evaluatesNames) {
+            this.feature = feature;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.evaluatesNames = evaluatesNames;
+        }
+    }
+
+    private static class CallCaches {
+        final String configSignature;
+        final long featuresVersion;
+        /* karate may cache null results, so these are not ConcurrentHashMaps */
+        final Map<String, Object> callSingle = Collections.synchronizedMap(new HashMap<>());
+        final Map<String, ScenarioCall.Result> callOnce = Collections.synchronizedMap(new HashMap<>());
+
+        CallCaches(String configSignature, long featuresVersion) {
+            this.configSignature = configSignature;
+            this.featuresVersion = featuresVersion;
+        }
+    }
+}
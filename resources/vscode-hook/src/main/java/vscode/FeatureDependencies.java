@@ -0,0 +1,214 @@
+package vscode;
+
+import com.intuit.karate.FileUtils;
+import com.intuit.karate.core.Background;
+import com.intuit.karate.core.ExamplesTable;
+import com.intuit.karate.core.Feature;
+import com.intuit.karate.core.FeatureSection;
+import com.intuit.karate.core.Step;
+import com.intuit.karate.core.Table;
+import com.intuit.karate.resource.Resource;
+import com.intuit.karate.resource.ResourceUtils;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Files read or called by features: <code>read('...')</code>, <code>call</code>/<code>callonce</code> and
+ * <code>karate.call()</code>/<code>karate.callSingle()</code> with a literal path, in steps, doc strings and tables.
+ * Called features and js files are followed too, so a change in a shared helper is traced back to the features that use
+ * it, directly or not.
+ *
+ * Only files on disk are tracked, keyed by their absolute normalized path. Not thread safe.
+ *
+ * @author ivangsa
+ */
+class FeatureDependencies {
+
+    private static final Pattern REFERENCE = Pattern.compile(
+            "\\b(?:read|karate\\.read|karate\\.call|karate\\.callonce|karate\\.callSingle)\\s*\\(\\s*['\"]([^'\"]+)['\"]");
+
+    private final FeatureCache featureCache;
+    private final File workingDir;
+    /* file -> files it reads or calls */
+    private final Map<Path, Set<Path>> dependencies = new HashMap<>();
+    /* file -> files reading or calling it */
+    private final Map<Path, Set<Path>> dependents = new HashMap<>();
+
+    FeatureDependencies(FeatureCache featureCache, File workingDir) {
+        this.featureCache = featureCache;
+        this.workingDir = workingDir;
+    }
+
+    /**
+     * Adds the feature and everything it reads or calls, parsing the called features not yet known.
+     */
+    void add(Feature feature) {
+        Path path = path(feature.getResource());
+        if (path != null) {
+            update(path, feature);
+        }
+    }
+
+    /**
+     * Updates the dependencies of a changed file, files that are not features nor js have none.
+     */
+    void update(Path path) {
+        File file = path.toFile();
+        if (!file.isFile()) {
+            remove(path);
+        } else if (file.getName().endsWith(".feature")) {
+            update(path, featureCache.read(ResourceUtils.getResource(workingDir, "file:" + file.getAbsolutePath())));
+        } else if (file.getName().endsWith(".js")) {
+            setDependencies(path, references(ResourceUtils.getResource(workingDir, "file:" + file.getAbsolutePath()),
+                    FileUtils.toString(file)));
+        }
+    }
+
+    void remove(Path path) {
+        setDependencies(path, new HashSet<>());
+        if (!dependents.containsKey(path)) {
+            dependencies.remove(path);
+        }
+    }
+
+    boolean contains(Path path) {
+        return dependencies.containsKey(path) || dependents.containsKey(path);
+    }
+
+    /**
+     * @return the changed files and all the files reading or calling them, directly or not.
+     */
+    Set<Path> affected(Collection<Path> changed) {
+        Set<Path> affected = new LinkedHashSet<>(changed);
+        Deque<Path> pending = new ArrayDeque<>(changed);
+        while (!pending.isEmpty()) {
+            for (Path dependent : dependents.getOrDefault(pending.pop(), new HashSet<>())) {
+                if (affected.add(dependent)) {
+                    pending.push(dependent);
+                }
+            }
+        }
+        return affected;
+    }
+
+    /**
+     * @return directories of the tracked files.
+     */
+    Set<Path> directories() {
+        Set<Path> directories = new HashSet<>();
+        for (Path path : dependencies.keySet()) {
+            directories.add(path.getParent());
+        }
+        for (Path path : dependents.keySet()) {
+            directories.add(path.getParent());
+        }
+        return directories;
+    }
+
+    private void update(Path path, Feature feature) {
+        StringBuilder text = new StringBuilder();
+        Background background = feature.getBackground();
+        if (background != null) {
+            append(text, background.getSteps());
+        }
+        for (FeatureSection section : feature.getSections()) {
+            if (section.isOutline()) {
+                append(text, section.getScenarioOutline().getSteps());
+                for (ExamplesTable examples : section.getScenarioOutline().getExamplesTables()) {
+                    append(text, examples.getTable());
+                }
+            } else {
+                append(text, section.getScenario().getSteps());
+            }
+        }
+        setDependencies(path, references(feature.getResource(), text));
+    }
+
+    private void setDependencies(Path path, Set<Path> references) {
+        Set<Path> previous = dependencies.put(path, references);
+        if (previous != null) {
+            for (Path reference : previous) {
+                Set<Path> referenceDependents = dependents.get(reference);
+                if (referenceDependents != null && referenceDependents.remove(path) && referenceDependents.isEmpty()) {
+                    dependents.remove(reference);
+                }
+            }
+        }
+        for (Path reference : references) {
+            dependents.computeIfAbsent(reference, k -> new HashSet<>()).add(path);
+            if (previous == null || !previous.contains(reference)) {
+                if (!dependencies.containsKey(reference)) {
+                    update(reference); // new reference, follow it
+                }
+            }
+        }
+    }
+
+    private Set<Path> references(Resource resource, CharSequence text) {
+        Set<Path> references = new HashSet<>();
+        Matcher matcher = REFERENCE.matcher(text);
+        while (matcher.find()) {
+            String reference = matcher.group(1);
+            int tag = reference.indexOf('@');
+            if (tag > 0) {
+                reference = reference.substring(0, tag); // call read('called.feature@tag')
+            }
+            Path path = path(resolve(resource, reference));
+            if (path != null) {
+                references.add(path);
+            }
+        }
+        return references;
+    }
+
+    private Resource resolve(Resource resource, String reference) {
+        try {
+            if (reference.startsWith(Resource.CLASSPATH_COLON) || reference.startsWith(Resource.FILE_COLON)) {
+                return ResourceUtils.getResource(workingDir, reference);
+            }
+            if (reference.startsWith(Resource.THIS_COLON)) {
+                reference = reference.substring(Resource.THIS_COLON.length());
+            }
+            return resource.resolve(reference);
+        } catch (Exception e) {
+            return null; // not found, or an expression and not a path
+        }
+    }
+
+    private static Path path(Resource resource) {
+        if (resource == null || !resource.isFile() || resource.getFile() == null) {
+            return null;
+        }
+        return resource.getFile().toPath().toAbsolutePath().normalize();
+    }
+
+    private static void append(StringBuilder text, List<Step> steps) {
+        for (Step step : steps) {
+            text.append(step.getText()).append('\n');
+            if (step.getDocString() != null) {
+                text.append(step.getDocString()).append('\n');
+            }
+            append(text, step.getTable());
+        }
+    }
+
+    private static void append(StringBuilder text, Table table) {
+        if (table != null) {
+            for (List<String> row : table.getRows()) {
+                text.append(String.join("|", row)).append('\n');
+            }
+        }
+    }
+}
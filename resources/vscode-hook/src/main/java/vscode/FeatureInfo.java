@@ -0,0 +1,124 @@
+package vscode;
+
+import com.intuit.karate.core.Feature;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Feature values used to build hook events. They don't change during a run, so they are computed once per feature and
+ * cached, keyed by feature identity and weakly referenced so features can be collected with their runtime.
+ *
+ * @author ivangsa
+ */
+final class FeatureInfo {
+
+    private static final Map<Object, FeatureInfo> cache = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<Feature> collected = new ReferenceQueue<>();
+
+    /** <code>feature.getNameForReport()</code> */
+    final String nameForReport;
+    /** <code>nameForReport</code> escaped for <code>##vscode</code> output lines */
+    final String escapedNameForReport;
+    final String relativePath;
+    final String prefixedPath;
+    final int line;
+    /** <code>relativePath:line</code> */
+    final String locationHint;
+    /** <code>relativePath:line nameForReport</code> */
+    final String name;
+
+    private FeatureInfo(Feature feature) {
+        this.nameForReport = feature.getNameForReport();
+        this.escapedNameForReport = VSCodeOutputRuntimeHook.escape(nameForReport);
+        this.relativePath = feature.getResource().getRelativePath();
+        this.prefixedPath = feature.getResource().getPrefixedPath();
+        this.line = feature.getLine();
+        this.locationHint = relativePath + ":" + line;
+        this.name = locationHint + " " + nameForReport;
+    }
+
+    static FeatureInfo of(Feature feature) {
+        FeatureInfo info = cache.get(new Lookup(feature));
+        if (info == null) {
+            expunge();
+            info = cache.computeIfAbsent(new Key(feature, collected), k -> new FeatureInfo(feature));
+        }
+        return info;
+    }
+
+    /**
+     * @return true if both are the same feature file, even if parsed more than once.
+     */
+    static boolean isSame(Feature f1, Feature f2) {
+        if (f1 == f2) {
+            return true;
+        }
+        if (f1 == null || f2 == null) {
+            return false;
+        }
+        return of(f1).prefixedPath.equals(of(f2).prefixedPath);
+    }
+
+    private static void expunge() {
+        Reference<? extends Feature> reference;
+        while ((reference = collected.poll()) != null) {
+            cache.remove(reference);
+        }
+    }
+
+    private static class Key extends WeakReference<Feature> {
+        private final int hash;
+
+        Key(Feature feature, ReferenceQueue<Feature> queue) {
+            super(feature, queue);
+            this.hash = System.identityHashCode(feature);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o instanceof Lookup) {
+                return ((Lookup) o).feature == get();
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Feature feature = get();
+            return feature != null && feature == ((Key) o).get();
+        }
+    }
+
+    /**
+     * Plain key to find the {@link Key} of a feature, so lookups don't create reference objects.
+     */
+    private static class Lookup {
+        private final Feature feature;
+        private final int hash;
+
+        Lookup(Feature feature) {
+            this.feature = feature;
+            this.hash = System.identityHashCode(feature);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).get() == feature;
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package vscode;
+
+import com.intuit.karate.Main;
+import com.intuit.karate.core.Feature;
+import com.intuit.karate.resource.Resource;
+import com.intuit.karate.resource.ResourceUtils;
+import com.intuit.karate.shell.Command;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Watch mode of {@link KarateTestProcess}: watches the feature and classpath directories of a karate command line and,
+ * when files change, runs again only the features affected by the change, as found by {@link FeatureDependencies}.
+ * A change in a karate-config file runs all of them.
+ *
+ * Changes are collected until there are none for <code>vscode.watch.debounceMillis</code> (default 300).
+ *
+ * @author ivangsa
+ */
+class FeatureWatcher implements Runnable {
+
+    static final String DEBOUNCE_MILLIS = "vscode.watch.debounceMillis";
+
+    private static final Logger log = LoggerFactory.getLogger(FeatureWatcher.class);
+
+    final String commandLine;
+    private final KarateRunExecutor runExecutor;
+    private final FeatureCache featureCache;
+    private final File workingDir;
+    private final List<String> paths;
+    private final long debounceMillis;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> watchedDirs = new HashMap<>();
+    /* watched features and the path used to run them */
+    private final Map<Path, String> features = new HashMap<>();
+    private final FeatureDependencies dependencies;
+    private final Thread thread;
+
+    private volatile boolean stopped;
+    private volatile KarateRun lastRun;
+    private volatile int runCount;
+
+    FeatureWatcher(String commandLine, KarateRunExecutor runExecutor, FeatureCache featureCache) throws Exception {
+        this.commandLine = commandLine;
+        this.runExecutor = runExecutor;
+        this.featureCache = featureCache;
+        Main karateMain = KarateTestProcess.parseCommandLine(commandLine);
+        this.workingDir = featureCache.workingDir(karateMain);
+        this.paths = new ArrayList<>(karateMain.getPaths());
+        this.debounceMillis = Long.getLong(DEBOUNCE_MILLIS, 300);
+        this.dependencies = new FeatureDependencies(featureCache, workingDir);
+        this.watchService = FileSystems.getDefault().newWatchService();
+        addFeatures(featureCache.features(karateMain));
+        for (String path : paths) {
+            File dir = directory(path);
+            if (dir != null) {
+                watchTree(dir.toPath());
+            }
+        }
+        watchDependencies();
+        this.thread = new Thread(this, "karate-watch");
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    void stop() {
+        stopped = true;
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            log.debug("FeatureWatcher close error", e);
+        }
+    }
+
+    Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("commandLine", commandLine);
+        map.put("watching", !stopped);
+        map.put("runs", runCount);
+        KarateRun run = lastRun;
+        if (run != null) {
+            map.put("lastRun", runExecutor.status(run));
+        }
+        return map;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!stopped) {
+                WatchKey key = watchService.poll(1, TimeUnit.SECONDS);
+                if (key == null) {
+                    continue;
+                }
+                Set<Path> changed = new HashSet<>();
+                boolean featuresAddedOrRemoved = false;
+                do {
+                    featuresAddedOrRemoved |= collect(key, changed);
+                } while ((key = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS)) != null);
+                if (featuresAddedOrRemoved) {
+                    addFeatures(featureCache.features(KarateTestProcess.parseCommandLine(commandLine)));
+                }
+                onChange(changed);
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // stopped
+        } catch (Exception e) {
+            log.error("FeatureWatcher stopped: {}", e.getMessage(), e);
+            stop();
+        }
+    }
+
+    /**
+     * @return true if feature files were created or deleted.
+     */
+    private boolean collect(WatchKey key, Set<Path> changed) {
+        boolean featuresAddedOrRemoved = false;
+        Path dir = watchedDirs.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (dir == null || event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                continue;
+            }
+            Path path = dir.resolve((Path) event.context()).toAbsolutePath().normalize();
+            if (Files.isDirectory(path)) {
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && isUnderRoot(path)) {
+                    watchTree(path);
+                    featuresAddedOrRemoved = true;
+                }
+                continue;
+            }
+            if (event.kind() != StandardWatchEventKinds.ENTRY_MODIFY && path.toString().endsWith(".feature")) {
+                featuresAddedOrRemoved |= isUnderRoot(path);
+            }
+            changed.add(path);
+        }
+        if (!key.reset()) {
+            watchedDirs.remove(key);
+        }
+        return featuresAddedOrRemoved;
+    }
+
+    private void onChange(Set<Path> changed) throws Exception {
+        boolean runAll = false;
+        for (Path path : changed) {
+            String fileName = path.getFileName().toString();
+            runAll |= fileName.startsWith("karate-config") && fileName.endsWith(".js");
+            if (dependencies.contains(path) || features.containsKey(path)) {
+                dependencies.update(path);
+            }
+        }
+        watchDependencies();
+        Set<Path> affected = runAll ? features.keySet() : dependencies.affected(changed);
+        List<String> runPaths = new ArrayList<>();
+        for (Path path : affected) {
+            String runPath = features.get(path);
+            if (runPath != null && path.toFile().isFile()) {
+                runPaths.add(runPath);
+            }
+        }
+        if (runPaths.isEmpty()) {
+            log.debug("No watched features affected by {}", changed);
+            return;
+        }
+        log.debug("Running {} affected by {}", runPaths, changed);
+        String runCommandLine = runCommandLine(runPaths);
+        lastRun = runExecutor.submit(runCommandLine, KarateTestProcess.parseCommandLine(runCommandLine));
+        runCount++;
+    }
+
+    /**
+     * @return the watched command line with its paths replaced, runs may be executed in other JVMs.
+     */
+    private String runCommandLine(List<String> runPaths) {
+        StringBuilder runCommandLine = new StringBuilder();
+        for (String token : Command.tokenize(commandLine)) {
+            if (!paths.contains(token.replaceAll("^'|'$|^\"|\"$", ""))) {
+                runCommandLine.append(quote(token)).append(' ');
+            }
+        }
+        for (String runPath : runPaths) {
+            runCommandLine.append(quote(runPath)).append(' ');
+        }
+        return runCommandLine.toString().trim();
+    }
+
+    private static String quote(String token) {
+        return token.matches(".*\\s.*") && !token.startsWith("\"") ? "\"" + token + "\"" : token;
+    }
+
+    private void addFeatures(List<Feature> features) {
+        for (Feature feature : features) {
+            Resource resource = feature.getResource();
+            if (resource.isFile() && resource.getFile() != null) {
+                Path path = resource.getFile().toPath().toAbsolutePath().normalize();
+                if (!this.features.containsKey(path)) {
+                    this.features.put(path, resource.getPrefixedPath());
+                    dependencies.add(feature);
+                }
+            }
+        }
+        this.features.keySet().removeIf(path -> !path.toFile().isFile());
+    }
+
+    /**
+     * @return the directory of a command line path, if it is a directory on disk.
+     */
+    private File directory(String path) {
+        if (path.contains(".feature")) {
+            return null;
+        }
+        File dir;
+        if (path.startsWith(Resource.CLASSPATH_COLON)) {
+            dir = ResourceUtils.classPathToFile(path.substring(Resource.CLASSPATH_COLON.length()));
+        } else if (path.startsWith(Resource.FILE_COLON)) {
+            dir = new File(path.substring(Resource.FILE_COLON.length()));
+        } else {
+            dir = new File(path).isAbsolute() ? new File(path) : new File(workingDir, path);
+        }
+        return dir != null && dir.isDirectory() ? dir : null;
+    }
+
+    private boolean isUnderRoot(Path path) {
+        for (String root : paths) {
+            File dir = directory(root);
+            if (dir != null && path.startsWith(dir.toPath().toAbsolutePath().normalize())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void watchTree(Path root) {
+        try (Stream<Path> dirs = Files.walk(root)) {
+            dirs.filter(Files::isDirectory).forEach(this::watch);
+        } catch (IOException e) {
+            log.debug("FeatureWatcher can not walk {}", root, e);
+        }
+    }
+
+    /**
+     * Watches the directories of features and the files they read or call, outside the watched trees.
+     */
+    private void watchDependencies() {
+        for (Path dir : dependencies.directories()) {
+            watch(dir);
+        }
+    }
+
+    private void watch(Path dir) {
+        Path normalized = dir.toAbsolutePath().normalize();
+        if (watchedDirs.containsValue(normalized) || !Files.isDirectory(normalized)) {
+            return;
+        }
+        try {
+            WatchKey key = normalized.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+            watchedDirs.put(key, normalized);
+        } catch (IOException e) {
+            log.debug("FeatureWatcher can not watch {}", normalized, e);
+        }
+    }
+}
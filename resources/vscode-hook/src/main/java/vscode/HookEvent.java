@@ -0,0 +1,60 @@
+package vscode;
+
+import com.intuit.karate.RuntimeHook;
+import com.intuit.karate.Suite;
+import com.intuit.karate.core.FeatureRuntime;
+import com.intuit.karate.core.ScenarioOutline;
+import com.intuit.karate.core.ScenarioRuntime;
+import com.intuit.karate.core.Step;
+import com.intuit.karate.core.StepResult;
+import com.intuit.karate.http.HttpRequest;
+import com.intuit.karate.http.Response;
+
+import java.util.EnumSet;
+
+/**
+ * Callbacks an {@link ExtendedRuntimeHook} can consume, see {@link ExtendedRuntimeHook#getEvents()}.
+ *
+ * @author ivangsa
+ */
+public enum HookEvent {
+    BEFORE_SUITE("beforeSuite", Suite.class),
+    AFTER_SUITE("afterSuite", Suite.class),
+    BEFORE_FEATURE("beforeFeature", FeatureRuntime.class),
+    AFTER_FEATURE("afterFeature", FeatureRuntime.class),
+    BEFORE_SCENARIO_OUTLINE("beforeScenarioOutline", ScenarioOutline.class, ScenarioRuntime.class),
+    AFTER_SCENARIO_OUTLINE("afterScenarioOutline", ScenarioOutline.class, ScenarioRuntime.class),
+    BEFORE_SCENARIO("beforeScenario", ScenarioRuntime.class),
+    AFTER_SCENARIO("afterScenario", ScenarioRuntime.class),
+    BEFORE_STEP("beforeStep", Step.class, ScenarioRuntime.class),
+    AFTER_STEP("afterStep", StepResult.class, ScenarioRuntime.class),
+    BEFORE_HTTP_CALL("beforeHttpCall", HttpRequest.class, ScenarioRuntime.class),
+    AFTER_HTTP_CALL("afterHttpCall", HttpRequest.class, Response.class, ScenarioRuntime.class);
+
+    final String callback;
+    final Class<?>[] parameterTypes;
+
+    HookEvent(String callback, Class<?>... parameterTypes) {
+        this.callback = callback;
+        this.parameterTypes = parameterTypes;
+    }
+
+    /**
+     * @return the events whose callbacks are overridden by the hook, the default implementations in
+     * {@link RuntimeHook} and {@link ExtendedRuntimeHook} do nothing.
+     */
+    static EnumSet<HookEvent> implementedBy(RuntimeHook hook) {
+        EnumSet<HookEvent> events = EnumSet.noneOf(HookEvent.class);
+        for (HookEvent event : values()) {
+            try {
+                Class<?> declaringClass = hook.getClass().getMethod(event.callback, event.parameterTypes).getDeclaringClass();
+                if (declaringClass != RuntimeHook.class && declaringClass != ExtendedRuntimeHook.class) {
+                    events.add(event);
+                }
+            } catch (NoSuchMethodException e) {
+                // callback not available in this karate version
+            }
+        }
+        return events;
+    }
+}
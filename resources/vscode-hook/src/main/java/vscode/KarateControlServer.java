@@ -0,0 +1,286 @@
+package vscode;
+
+import com.intuit.karate.JsonUtils;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Http control server for {@link KarateTestProcess}, connections are kept alive between requests.
+ *
+ * <ul>
+ *     <li><code>POST /runs</code> with <code>{"commandLine": "...", "stream": false}</code>: submits a run and returns
+ *     its status, with <code>"stream": true</code> the run events are streamed in the same response</li>
+ *     <li><code>GET /runs</code>: running and queued runs</li>
+ *     <li><code>GET /runs/{runId}</code>: run status</li>
+ *     <li><code>GET /runs/{runId}/events</code>: streams the run events</li>
+ *     <li><code>POST /runs/{runId}/cancel</code>: cancels the run and returns its status</li>
+ *     <li><code>POST /watch</code> with <code>{"commandLine": "..."}</code>: starts watching the command line features,
+ *     runs again the ones affected by file changes, see {@link FeatureWatcher}</li>
+ *     <li><code>GET /watch</code>: watch status</li>
+ *     <li><code>DELETE /watch</code>: stops watching</li>
+ *     <li><code>GET /process</code>: heap usage of this process, used by {@link KarateWorkerPool}</li>
+ * </ul>
+ *
+ * Streams are json lines: the <code>##vscode</code> events printed by {@link VSCodeOutputRuntimeHook} followed by the
+ * final run status. The previous plain GET api (<code>/{encoded command line}</code>, <code>/status/{runId}</code>,
+ * <code>/cancel/{runId}</code>, <code>/queue</code> and <code>/stop</code>) is still supported.
+ *
+ * @author ivangsa
+ */
+class KarateControlServer {
+
+    private static final Logger log = LoggerFactory.getLogger(KarateControlServer.class);
+
+    private static final String JSON = "application/json; charset=UTF-8";
+    private static final String JSON_LINES = "application/x-ndjson; charset=UTF-8";
+    private static final String TEXT = "text/plain; charset=UTF-8";
+    private static final long EVENTS_POLL_MILLIS = 1000;
+
+    private final KarateRunExecutor runExecutor;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    KarateControlServer(int port, KarateRunExecutor runExecutor) throws IOException {
+        this(new InetSocketAddress(port), runExecutor);
+    }
+
+    KarateControlServer(InetSocketAddress address, KarateRunExecutor runExecutor) throws IOException {
+        this.runExecutor = runExecutor;
+        this.server = HttpServer.create(address, 0);
+        AtomicInteger threadCount = new AtomicInteger();
+        // streaming responses hold their thread until the run finishes
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "karate-control-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/runs", this::handleRuns);
+        server.createContext("/watch", this::handleWatch);
+        server.createContext("/", this::handleLegacy);
+    }
+
+    int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    void start() {
+        server.start();
+    }
+
+    void awaitStop() throws InterruptedException {
+        stopped.await();
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handleRuns(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            String[] path = exchange.getRequestURI().getPath().replaceAll("^/runs/?|/$", "").split("/");
+            if (path[0].isEmpty()) {
+                if ("POST".equals(method)) {
+                    submit(exchange);
+                } else if ("GET".equals(method)) {
+                    respond(exchange, 200, JSON, JsonUtils.toJson(runExecutor.queue()));
+                } else {
+                    respond(exchange, 405, TEXT, method + " not allowed\n");
+                }
+                return;
+            }
+            KarateRun run = findRun(path[0]);
+            if (run == null) {
+                respond(exchange, 404, TEXT, "run not found: " + path[0] + "\n");
+            } else if (path.length == 1 && "GET".equals(method)) {
+                respond(exchange, 200, JSON, JsonUtils.toJson(runExecutor.status(run)));
+            } else if ((path.length == 1 && "DELETE".equals(method)) || (path.length == 2 && "cancel".equals(path[1]) && "POST".equals(method))) {
+                runExecutor.cancel(run);
+                respond(exchange, 200, JSON, JsonUtils.toJson(runExecutor.status(run)));
+            } else if (path.length == 2 && "events".equals(path[1]) && "GET".equals(method)) {
+                stream(exchange, run);
+            } else {
+                respond(exchange, 404, TEXT, "not found: " + method + " " + exchange.getRequestURI() + "\n");
+            }
+        } catch (Exception e) {
+            log.debug("KarateControlServer error", e);
+            if (exchange.getResponseCode() == -1) {
+                respond(exchange, 500, TEXT, e.getMessage() + "\n");
+            }
+        }
+    }
+
+    private void submit(HttpExchange exchange) throws Exception {
+        Object body = JsonUtils.fromJson(readBody(exchange));
+        if (!(body instanceof Map) || !(((Map<?, ?>) body).get("commandLine") instanceof String)) {
+            respond(exchange, 400, TEXT, "expected {\"commandLine\": \"...\"}\n");
+            return;
+        }
+        Map<?, ?> request = (Map<?, ?>) body;
+        String commandLine = (String) request.get("commandLine");
+        KarateRun run = runExecutor.submit(commandLine, KarateTestProcess.parseCommandLine(commandLine));
+        if (Boolean.TRUE.equals(request.get("stream"))) {
+            stream(exchange, run);
+        } else {
+            respond(exchange, 200, JSON, JsonUtils.toJson(runExecutor.status(run)));
+        }
+    }
+
+    private void handleWatch(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            if ("POST".equals(method)) {
+                Object body = JsonUtils.fromJson(readBody(exchange));
+                if (!(body instanceof Map) || !(((Map<?, ?>) body).get("commandLine") instanceof String)) {
+                    respond(exchange, 400, TEXT, "expected {\"commandLine\": \"...\"}\n");
+                    return;
+                }
+                FeatureWatcher watcher = runExecutor.watch((String) ((Map<?, ?>) body).get("commandLine"));
+                respond(exchange, 200, JSON, JsonUtils.toJson(watcher.toMap()));
+            } else if ("GET".equals(method)) {
+                FeatureWatcher watcher = runExecutor.getWatcher();
+                if (watcher == null) {
+                    respond(exchange, 404, TEXT, "not watching\n");
+                } else {
+                    respond(exchange, 200, JSON, JsonUtils.toJson(watcher.toMap()));
+                }
+            } else if ("DELETE".equals(method)) {
+                if (runExecutor.stopWatching()) {
+                    respond(exchange, 200, TEXT, "stopped\n");
+                } else {
+                    respond(exchange, 404, TEXT, "not watching\n");
+                }
+            } else {
+                respond(exchange, 405, TEXT, method + " not allowed\n");
+            }
+        } catch (Exception e) {
+            log.debug("KarateControlServer error", e);
+            if (exchange.getResponseCode() == -1) {
+                respond(exchange, 500, TEXT, e.getMessage() + "\n");
+            }
+        }
+    }
+
+    /**
+     * Writes the run events as json lines until the run is done, then its final status.
+     */
+    private void stream(HttpExchange exchange, KarateRun run) throws IOException, InterruptedException {
+        exchange.getResponseHeaders().set("Content-Type", JSON_LINES);
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream out = exchange.getResponseBody()) {
+            int next = 0;
+            while (true) {
+                List<String> events = run.awaitEvents(next, EVENTS_POLL_MILLIS);
+                if (events == null) {
+                    break;
+                }
+                for (String event : events) {
+                    out.write(event.substring(event.indexOf('{')).getBytes(StandardCharsets.UTF_8));
+                    out.write('\n');
+                }
+                next += events.size();
+                out.flush();
+            }
+            out.write(JsonUtils.toJson(runExecutor.status(run)).getBytes(StandardCharsets.UTF_8));
+            out.write('\n');
+        }
+    }
+
+    private void handleLegacy(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getRawPath();
+        try {
+            if ("/stop".equals(path)) {
+                respond(exchange, 200, TEXT, "stopping\n");
+                stopped.countDown();
+            } else if ("/queue".equals(path)) {
+                respond(exchange, 200, JSON, JsonUtils.toJson(runExecutor.queue()));
+            } else if ("/process".equals(path)) {
+                respond(exchange, 200, JSON, JsonUtils.toJson(processStatus()));
+            } else if (path.startsWith("/cancel/") || path.startsWith("/status/")) {
+                KarateRun run = findRun(path.substring(path.indexOf('/', 1) + 1));
+                if (run == null) {
+                    respond(exchange, 404, TEXT, "run not found: " + path + "\n");
+                    return;
+                }
+                if (path.startsWith("/cancel/")) {
+                    runExecutor.cancel(run);
+                }
+                respond(exchange, 200, JSON, JsonUtils.toJson(runExecutor.status(run)));
+            } else {
+                String rawCommand = exchange.getRequestURI().getRawQuery() != null ? path + "?" + exchange.getRequestURI().getRawQuery() : path;
+                String commandLine = URLDecoder.decode(rawCommand.substring(1), StandardCharsets.UTF_8.name());
+                KarateRun run = runExecutor.submit(commandLine, KarateTestProcess.parseCommandLine(commandLine));
+                respond(exchange, 200, TEXT, "executing: " + commandLine + "\nrunId: " + run.id + "\n");
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            VSCodeOutputRuntimeHook.println(String.format(VSCodeOutputRuntimeHook.SUITE_FINISHED, 0, 0));
+            respond(exchange, 500, TEXT, e.getMessage() + "\n");
+        }
+    }
+
+    private static Map<String, Object> processStatus() {
+        long heapAfterGc = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            MemoryUsage usage = pool.getType() == MemoryType.HEAP ? pool.getCollectionUsage() : null;
+            if (usage != null) {
+                heapAfterGc += usage.getUsed();
+            }
+        }
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("heapUsed", ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+        status.put("heapAfterGc", heapAfterGc);
+        status.put("uptime", ManagementFactory.getRuntimeMXBean().getUptime());
+        return status;
+    }
+
+    private KarateRun findRun(String runId) {
+        try {
+            return runExecutor.get(Long.parseLong(runId));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8 * 1024];
+        try (InputStream in = exchange.getRequestBody()) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                body.write(buffer, 0, read);
+            }
+        }
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package vscode;
+
+import com.intuit.karate.Main;
+import com.intuit.karate.Suite;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A karate execution submitted to {@link KarateTestProcess}.
+ *
+ * Runs are cancelled cooperatively: {@link VSCodeHook} links the run to its {@link Suite}, which is aborted so no more
+ * scenarios are started, and skips the remaining steps of the scenarios already running. Runs executed by a
+ * {@link KarateWorker} are cancelled in the worker.
+ *
+ * @author ivangsa
+ */
+class KarateRun implements Runnable {
+
+    enum Status {
+        QUEUED, RUNNING, FINISHED, FAILED, CANCELLED
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(KarateRun.class);
+
+    /* events kept per run for streaming, later events are not kept */
+    private static final int MAX_EVENTS = 100_000;
+
+    /* the run executing in the current thread, karate calls beforeSuite in the thread starting the run */
+    private static final ThreadLocal<KarateRun> current = new ThreadLocal<>();
+
+    final long id;
+    final String commandLine;
+    private final Main karateMain;
+    private final FeatureCache featureCache;
+    private final KarateWorkerPool workerPool;
+    final long submittedTime = System.currentTimeMillis();
+
+    private volatile Status status = Status.QUEUED;
+    private volatile long startTime;
+    private volatile long endTime;
+    private volatile String error;
+    private volatile boolean cancelled;
+    private volatile Suite suite;
+    private volatile KarateWorker worker;
+    private volatile long workerRunId;
+    private List<String> events = new ArrayList<>();
+
+    KarateRun(long id, String commandLine, Main karateMain, FeatureCache featureCache, KarateWorkerPool workerPool) {
+        this.id = id;
+        this.commandLine = commandLine;
+        this.karateMain = karateMain;
+        this.featureCache = featureCache;
+        this.workerPool = workerPool;
+    }
+
+    Status getStatus() {
+        return status;
+    }
+
+    boolean isDone() {
+        return status == Status.FINISHED || status == Status.FAILED || status == Status.CANCELLED;
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    static KarateRun current() {
+        return current.get();
+    }
+
+    void attach(Suite suite) {
+        this.suite = suite;
+        if (cancelled) {
+            abort(suite);
+        }
+    }
+
+    void attach(KarateWorker worker, long workerRunId) {
+        this.workerRunId = workerRunId;
+        this.worker = worker;
+        if (cancelled) {
+            worker.cancel(workerRunId);
+        }
+    }
+
+    void detach() {
+        this.suite = null;
+        this.worker = null;
+    }
+
+    /**
+     * Requests cancellation, a queued run will not start and a running one stops at the next scenario or step.
+     */
+    void cancel() {
+        cancelled = true;
+        Suite suite = this.suite;
+        if (suite != null) {
+            abort(suite);
+        }
+        KarateWorker worker = this.worker;
+        if (worker != null) {
+            worker.cancel(workerRunId);
+        }
+    }
+
+    /**
+     * Marks a queued run that was removed from the queue before starting.
+     */
+    void cancelled() {
+        cancelled = true;
+        // the IDE may be waiting for this run to finish
+        print(String.format(VSCodeOutputRuntimeHook.SUITE_FINISHED, EventClock.currentTime(), 0));
+        endTime = System.currentTimeMillis();
+        done(Status.CANCELLED);
+    }
+
+    /**
+     * Prints an output event and keeps it for streaming.
+     */
+    void print(String event) {
+        VSCodeOutputRuntimeHook.println(event);
+        publish(event);
+    }
+
+    synchronized void publish(String event) {
+        if (events != null && events.size() < MAX_EVENTS) {
+            events.add(event);
+            notifyAll();
+        }
+    }
+
+    /**
+     * Waits until there are events after <code>from</code> or the run is done.
+     *
+     * @return the new events, possibly none if the timeout expired, or null if the run is done and all events were
+     * returned.
+     */
+    synchronized List<String> awaitEvents(int from, long timeoutMillis) throws InterruptedException {
+        if (events == null) {
+            return null;
+        }
+        if (events.size() <= from && !isDone()) {
+            wait(timeoutMillis);
+        }
+        if (events.size() > from) {
+            return new ArrayList<>(events.subList(from, events.size()));
+        }
+        return isDone() ? null : Collections.emptyList();
+    }
+
+    /**
+     * Releases the events of a finished run, they can not be streamed anymore.
+     */
+    synchronized void discardEvents() {
+        events = null;
+    }
+
+    private synchronized void done(Status status) {
+        this.status = status;
+        notifyAll();
+    }
+
+    private void abort(Suite suite) {
+        try {
+            suite.abort();
+        } catch (LinkageError e) {
+            // Suite.abort() not available in this karate version, scenarios and steps are still skipped by VSCodeHook
+        }
+    }
+
+    @Override
+    public void run() {
+        if (isDone()) {
+            return;
+        }
+        if (cancelled) {
+            cancelled();
+            return;
+        }
+        startTime = System.currentTimeMillis();
+        status = Status.RUNNING;
+        current.set(this);
+        try {
+            log.debug("Executing run {}: {}", id, commandLine);
+            // null when no worker could be started, the run is executed in this process
+            Map<String, Object> result = workerPool != null ? workerPool.execute(this) : null;
+            if (result != null) {
+                Status workerStatus = Status.valueOf((String) result.get("status"));
+                error = (String) result.get("error");
+                endTime = System.currentTimeMillis();
+                done(cancelled ? Status.CANCELLED : workerStatus == Status.FINISHED ? Status.FINISHED : Status.FAILED);
+            } else {
+                featureCache.call(karateMain);
+                endTime = System.currentTimeMillis();
+                done(cancelled ? Status.CANCELLED : Status.FINISHED);
+            }
+        } catch (Throwable e) {
+            // errors too (linkage errors from other karate versions), else the run and its event clients never finish
+            e.printStackTrace();
+            error = e.getMessage() != null ? e.getMessage() : e.toString();
+            print(String.format(VSCodeOutputRuntimeHook.SUITE_FINISHED, 0, 0));
+            endTime = System.currentTimeMillis();
+            done(Status.FAILED);
+            if (e instanceof VirtualMachineError) {
+                throw (VirtualMachineError) e;
+            }
+        } finally {
+            current.remove();
+            suite = null;
+            worker = null;
+        }
+    }
+
+    Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("runId", id);
+        map.put("status", status.name());
+        map.put("commandLine", commandLine);
+        map.put("submittedTime", submittedTime);
+        if (startTime > 0) {
+            map.put("startTime", startTime);
+        }
+        if (endTime > 0) {
+            map.put("endTime", endTime);
+        }
+        if (error != null) {
+            map.put("error", error);
+        }
+        return map;
+    }
+}
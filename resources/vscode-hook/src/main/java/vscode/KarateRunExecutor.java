@@ -0,0 +1,192 @@
+package vscode;
+
+import com.intuit.karate.Main;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs karate executions submitted to {@link KarateTestProcess}, at most <code>vscode.maxConcurrentRuns</code>
+ * (default 1) at the same time, the rest wait in a FIFO queue.
+ *
+ * With <code>vscode.cancelPrevious=true</code> submitting a run cancels all the queued and running ones.
+ *
+ * Runs can also be submitted by a {@link FeatureWatcher} when the watched files change. With a
+ * {@link KarateWorkerPool} runs are executed in its worker JVMs.
+ *
+ * @author ivangsa
+ */
+class KarateRunExecutor {
+
+    static final String MAX_CONCURRENT_RUNS = "vscode.maxConcurrentRuns";
+    static final String CANCEL_PREVIOUS = "vscode.cancelPrevious";
+
+    /* finished runs are kept so their status can be queried, up to this number */
+    private static final int MAX_FINISHED_RUNS = 100;
+    /* events of finished runs are kept for streaming, up to this number of runs */
+    private static final int MAX_FINISHED_RUNS_WITH_EVENTS = 10;
+
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final ThreadPoolExecutor executor;
+    private final Map<Long, KarateRun> runs = new LinkedHashMap<>();
+    private final boolean cancelPrevious;
+    private final FeatureCache featureCache = new FeatureCache();
+    private final KarateWorkerPool workerPool;
+    private FeatureWatcher watcher;
+
+    KarateRunExecutor() {
+        this(Integer.getInteger(MAX_CONCURRENT_RUNS, 1), Boolean.getBoolean(CANCEL_PREVIOUS), null);
+    }
+
+    /**
+     * Runs executions in the worker JVMs of the pool, as many at the same time as workers.
+     */
+    KarateRunExecutor(KarateWorkerPool workerPool) {
+        this(workerPool.size(), Boolean.getBoolean(CANCEL_PREVIOUS), workerPool);
+    }
+
+    KarateRunExecutor(int maxConcurrentRuns, boolean cancelPrevious, KarateWorkerPool workerPool) {
+        this.cancelPrevious = cancelPrevious;
+        this.workerPool = workerPool;
+        int threads = Math.max(1, maxConcurrentRuns);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "karate-run-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    synchronized KarateRun submit(String commandLine, Main karateMain) {
+        if (cancelPrevious) {
+            for (KarateRun previous : runs.values()) {
+                cancel(previous);
+            }
+        }
+        KarateRun run = new KarateRun(nextId.getAndIncrement(), commandLine, karateMain, featureCache, workerPool);
+        runs.put(run.id, run);
+        evictFinishedRuns();
+        executor.execute(run);
+        return run;
+    }
+
+    /**
+     * @return false if the run had already finished.
+     */
+    synchronized boolean cancel(KarateRun run) {
+        if (run.isDone()) {
+            return false;
+        }
+        run.cancel();
+        if (executor.remove(run)) {
+            run.cancelled();
+        }
+        return true;
+    }
+
+    synchronized KarateRun get(long runId) {
+        return runs.get(runId);
+    }
+
+    /**
+     * @return 1 based position of the run in the queue, 0 if it is not queued.
+     */
+    synchronized int queuePosition(KarateRun run) {
+        if (run.getStatus() != KarateRun.Status.QUEUED) {
+            return 0;
+        }
+        int position = 0;
+        for (KarateRun other : runs.values()) {
+            if (other.getStatus() == KarateRun.Status.QUEUED) {
+                position++;
+            }
+            if (other == run) {
+                break;
+            }
+        }
+        return position;
+    }
+
+    /**
+     * @return running and queued runs, in execution order.
+     */
+    synchronized List<Map<String, Object>> queue() {
+        List<Map<String, Object>> queue = new ArrayList<>();
+        for (KarateRun run : runs.values()) {
+            if (!run.isDone()) {
+                queue.add(status(run));
+            }
+        }
+        return queue;
+    }
+
+    synchronized Map<String, Object> status(KarateRun run) {
+        Map<String, Object> status = run.toMap();
+        int position = queuePosition(run);
+        if (position > 0) {
+            status.put("queuePosition", position);
+        }
+        return status;
+    }
+
+    /**
+     * Starts watching the features of the command line, replacing the current watcher.
+     */
+    synchronized FeatureWatcher watch(String commandLine) throws Exception {
+        stopWatching();
+        watcher = new FeatureWatcher(commandLine, this, featureCache);
+        watcher.start();
+        return watcher;
+    }
+
+    /**
+     * @return false if there was no watcher.
+     */
+    synchronized boolean stopWatching() {
+        if (watcher == null) {
+            return false;
+        }
+        watcher.stop();
+        watcher = null;
+        return true;
+    }
+
+    synchronized FeatureWatcher getWatcher() {
+        return watcher;
+    }
+
+    void shutdown() {
+        stopWatching();
+        executor.shutdown();
+        if (workerPool != null) {
+            workerPool.shutdown();
+        }
+    }
+
+    private void evictFinishedRuns() {
+        int finished = 0;
+        for (KarateRun run : runs.values()) {
+            if (run.isDone()) {
+                finished++;
+            }
+        }
+        for (Iterator<KarateRun> it = runs.values().iterator(); it.hasNext() && finished > MAX_FINISHED_RUNS_WITH_EVENTS; ) {
+            KarateRun run = it.next();
+            if (run.isDone()) {
+                run.discardEvents();
+                if (finished > MAX_FINISHED_RUNS) {
+                    it.remove();
+                }
+                finished--;
+            }
+        }
+    }
+}
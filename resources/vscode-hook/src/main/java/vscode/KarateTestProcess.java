@@ -1,41 +1,32 @@
 package vscode;
 
+import com.intuit.karate.FileUtils;
 import com.intuit.karate.Main;
+import com.intuit.karate.Runner;
 import com.intuit.karate.resource.ResourceUtils;
 import org.slf4j.ILoggerFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
+import java.io.IOException;
 import java.lang.reflect.Method;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.net.URLDecoder;
-import java.nio.charset.StandardCharsets;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 
-public class KarateTestProcess implements Runnable {
+public class KarateTestProcess {
 
     private static final String LOGBACK_CONFIG = "logback.configurationFile";
     private static Logger karateLog;
     private static Logger log;
 
-    private static boolean isStopped = false;
-    private static boolean singleThread = false;
     private static List<String> portAliases = Arrays.asList("-d", "--debug", "-p", "--port");
 
-    private Socket clientSocket;
-
-    KarateTestProcess(Socket clientSocket) {
-        this.clientSocket = clientSocket;
-    }
-
     public static void main(String[] args) throws Exception {
         String checkIfKarateMainInClasspath = Main.class.getName();
         String logbackConfig = System.getProperty(LOGBACK_CONFIG);
@@ -54,6 +45,11 @@ public class KarateTestProcess implements Runnable {
         karateLog = LoggerFactory.getLogger("com.intuit.karate");
         log = LoggerFactory.getLogger("vscode.KarateTestProcess");
 
+        if (Arrays.asList(args).contains("--worker")) {
+            runWorker();
+            return;
+        }
+
         int port = 0;
         boolean isDebug = false;
         for (int i = 0; i < args.length; i++) {
@@ -88,56 +84,89 @@ public class KarateTestProcess implements Runnable {
             return;
         }
 
-        try(ServerSocket serverSocket = new ServerSocket(port)) {
-            System.out.println("KarateTestProcess test server started on port " + serverSocket.getLocalPort());
-            while (!isStopped) {
-                KarateTestProcess karateTestProcess = new KarateTestProcess(serverSocket.accept());
-                if (singleThread) {
-                    karateTestProcess.run();
-                } else {
-                    new Thread(karateTestProcess).start();
-                }
-            }
-            log.debug("Stopping KarateTestProcess");
+        int workers = Integer.getInteger(KarateWorkerPool.WORKERS, 0);
+        KarateRunExecutor runExecutor;
+        if (workers > 0) {
+            KarateWorkerPool workerPool = new KarateWorkerPool(workers);
+            workerPool.start();
+            runExecutor = new KarateRunExecutor(workerPool);
+        } else {
+            runExecutor = new KarateRunExecutor();
         }
+        KarateControlServer server = new KarateControlServer(port, runExecutor);
+        server.start();
+        System.out.println("KarateTestProcess test server started on port " + server.getPort());
+        server.awaitStop();
+        log.debug("Stopping KarateTestProcess");
+        runExecutor.shutdown();
     }
 
-    public void run() {
-        try {
-            BufferedReader in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-            String line = in.readLine();
-            String[] tokens = line.split(" ");
-            if ("/stop".equals(tokens[1])) {
-                isStopped = true;
-                return;
+    /**
+     * Worker JVM of a {@link KarateWorkerPool}, exits when the pool closes its input or sends <code>/stop</code>.
+     */
+    private static void runWorker() throws Exception {
+        // only the pool, in this machine, can submit runs
+        KarateControlServer server = new KarateControlServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), new KarateRunExecutor(1, false, null));
+        warmUp();
+        server.start();
+        Thread input = new Thread(() -> {
+            try {
+                while (System.in.read() != -1) {
+                    // the pool does not write to its workers
+                }
+            } catch (IOException e) {
+                // closed
             }
+            System.exit(0);
+        }, "karate-worker-input");
+        input.setDaemon(true);
+        input.start();
+        System.out.println(KarateWorker.WORKER_STARTED + server.getPort());
+        server.awaitStop();
+        System.exit(0);
+    }
 
-            String commandLine = URLDecoder.decode(tokens[1].substring(1), StandardCharsets.UTF_8.name());
-            log.debug("Requested command: " + commandLine);
-            if (!canSkipBackupReportDir()) {
-                commandLine = commandLine.replace("--backup-reportdir=false", "");
-                commandLine = commandLine.replace("--backup-reportdir=true", "");
-                commandLine = commandLine.replace("--backup-reportdir", "");
+    /**
+     * Runs a throwaway feature so the first real run does not pay for loading and jitting karate.
+     */
+    private static void warmUp() {
+        File dir = null;
+        try {
+            dir = Files.createTempDirectory("karate-warmup").toFile();
+            File feature = new File(dir, "warmup.feature");
+            FileUtils.writeToFile(feature, "Feature: warmup\n\nScenario: warmup\n"
+                    + "  * def json = { name: 'warmup', items: [1, 2, 3] }\n"
+                    + "  * match json.items == '#[3]'\n");
+            Runner.path(feature.getAbsolutePath())
+                    .configDir("file:" + dir.getAbsolutePath()) // no karate-config.js
+                    .buildDir(dir.getAbsolutePath())
+                    .backupReportDir(false)
+                    .outputHtmlReport(false)
+                    .outputCucumberJson(false)
+                    .outputJunitXml(false)
+                    .parallel(1);
+        } catch (Exception | LinkageError e) {
+            // builder methods missing in older karate versions, the worker still starts
+            log.debug("Warm up failed: {}", e.toString());
+        } finally {
+            if (dir != null) {
+                FileUtils.deleteDirectory(dir);
             }
-            log.debug("Executing command: " + commandLine);
-            Main karateMain = Main.parseKarateOptions(commandLine);
-            karateMain.getPaths().replaceAll(path -> path.replaceAll("^'|'$|^\"|\"$", "")); // unquote
-            log.debug("Executing Karate Paths " + karateMain.getPaths());
-
-            OutputStream output = clientSocket.getOutputStream();
-            byte[] responseHeader = ("HTTP/1.1 200 OK\r\n" + "Content-Type: text/plain; charset=UTF-8\r\n\r\n").getBytes(StandardCharsets.UTF_8);
-            output.write(responseHeader);
-            output.write(("executing: " + commandLine + "\n").getBytes(StandardCharsets.UTF_8));
-            output.close();
-            in.close();
-            clientSocket.close();
-
-            karateMain.call();
+        }
+    }
 
-        } catch (Exception e) {
-            e.printStackTrace();
-            VSCodeOutputRuntimeHook.println(String.format(VSCodeOutputRuntimeHook.SUITE_FINISHED, 0, 0));
+    static Main parseCommandLine(String commandLine) {
+        log.debug("Requested command: " + commandLine);
+        if (!canSkipBackupReportDir()) {
+            commandLine = commandLine.replace("--backup-reportdir=false", "");
+            commandLine = commandLine.replace("--backup-reportdir=true", "");
+            commandLine = commandLine.replace("--backup-reportdir", "");
         }
+        log.debug("Executing command: " + commandLine);
+        Main karateMain = Main.parseKarateOptions(commandLine);
+        karateMain.getPaths().replaceAll(path -> path.replaceAll("^'|'$|^\"|\"$", "")); // unquote
+        log.debug("Executing Karate Paths " + karateMain.getPaths());
+        return karateMain;
     }
 
     private static boolean canKeepDebugSession() {
@@ -0,0 +1,231 @@
+package vscode;
+
+import com.intuit.karate.JsonUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A worker JVM of {@link KarateWorkerPool}: <code>KarateTestProcess --worker</code> launched with the same java,
+ * classpath and jvm options as this process. Runs are handed to its {@link KarateControlServer} over a local http
+ * connection, the worker only listens on the loopback address.
+ *
+ * The worker output is printed to this process output, so the IDE gets its <code>##vscode</code> events as usual. The
+ * worker exits when its input is closed, so it does not outlive this process.
+ *
+ * @author ivangsa
+ */
+class KarateWorker {
+
+    static final String WORKER_STARTED = "KarateTestProcess worker started on port ";
+
+    private static final Logger log = LoggerFactory.getLogger(KarateWorker.class);
+
+    private static final long START_TIMEOUT_SECONDS = 120;
+
+    final int id;
+    private final Process process;
+    private final CountDownLatch started = new CountDownLatch(1);
+    private volatile int port;
+    private int runs;
+    private long baselineHeap = -1;
+
+    private KarateWorker(int id, Process process) {
+        this.id = id;
+        this.process = process;
+    }
+
+    /**
+     * Launches a worker and waits until it is ready to run.
+     */
+    static KarateWorker start(int id) throws IOException, InterruptedException {
+        ProcessBuilder processBuilder = new ProcessBuilder(command()).redirectErrorStream(true);
+        KarateWorker worker = new KarateWorker(id, processBuilder.start());
+        Thread output = new Thread(worker::pumpOutput, "karate-worker-" + id + "-output");
+        output.setDaemon(true);
+        output.start();
+        if (!worker.started.await(START_TIMEOUT_SECONDS, TimeUnit.SECONDS) || worker.port == 0) {
+            worker.stop();
+            throw new IOException("karate worker " + id + " did not start");
+        }
+        worker.baselineHeap = worker.heapAfterGc();
+        log.debug("Karate worker {} started on port {}", id, worker.port);
+        return worker;
+    }
+
+    private static List<String> command() {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        for (String argument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            // debugger agents can not be shared by two processes
+            if (!argument.startsWith("-agentlib:jdwp") && !argument.startsWith("-Xrunjdwp")) {
+                command.add(argument);
+            }
+        }
+        command.add("-D" + KarateWorkerPool.WORKERS + "=0");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(KarateTestProcess.class.getName());
+        command.add("--worker");
+        return command;
+    }
+
+    /**
+     * Executes the run in this worker, publishing its events to the run.
+     *
+     * @return the final run status in the worker.
+     */
+    Map<String, Object> execute(KarateRun run) throws IOException {
+        runs++;
+        Map<String, Object> status = request("POST", "/runs", Collections.singletonMap("commandLine", run.commandLine));
+        long workerRunId = ((Number) status.get("runId")).longValue();
+        run.attach(this, workerRunId);
+        try {
+            HttpURLConnection connection = connect("GET", "/runs/" + workerRunId + "/events");
+            String last = null;
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (last != null) {
+                        run.publish("##vscode " + last);
+                    }
+                    last = line;
+                }
+            }
+            // the last line is the run status
+            return last != null ? toMap(last) : request("GET", "/runs/" + workerRunId, null);
+        } finally {
+            run.detach();
+        }
+    }
+
+    void cancel(long workerRunId) {
+        try {
+            request("POST", "/runs/" + workerRunId + "/cancel", null);
+        } catch (IOException e) {
+            log.debug("Karate worker {} cancel error", id, e);
+        }
+    }
+
+    int getRuns() {
+        return runs;
+    }
+
+    boolean isAlive() {
+        return process.isAlive();
+    }
+
+    /**
+     * @return heap growth in bytes since the worker started, measured after the last gc.
+     */
+    long heapGrowth() throws IOException {
+        return baselineHeap < 0 ? 0 : heapAfterGc() - baselineHeap;
+    }
+
+    void stop() {
+        try {
+            if (port != 0 && process.isAlive()) {
+                connect("GET", "/stop").getResponseCode();
+            }
+        } catch (IOException e) {
+            // exiting anyway
+        }
+        try {
+            process.getOutputStream().close(); // the worker exits when its input is closed
+            if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        } catch (IOException e) {
+            process.destroyForcibly();
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private long heapAfterGc() throws IOException {
+        return ((Number) request("GET", "/process", null).get("heapAfterGc")).longValue();
+    }
+
+    private void pumpOutput() {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (port == 0 && line.startsWith(WORKER_STARTED)) {
+                    port = Integer.parseInt(line.substring(WORKER_STARTED.length()).trim());
+                    started.countDown();
+                } else {
+                    VSCodeOutputRuntimeHook.println(line);
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            log.debug("Karate worker {} output error", id, e);
+        } finally {
+            started.countDown();
+        }
+    }
+
+    private Map<String, Object> request(String method, String path, Map<String, Object> body) throws IOException {
+        HttpURLConnection connection = connect(method, path);
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(JsonUtils.toJson(body).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        if (connection.getResponseCode() != 200) {
+            throw new IOException("karate worker " + id + ": " + method + " " + path + " " + connection.getResponseCode());
+        }
+        try (InputStream in = connection.getInputStream()) {
+            return toMap(new String(readAll(in), StandardCharsets.UTF_8));
+        }
+    }
+
+    private Map<String, Object> toMap(String json) throws IOException {
+        Object value = JsonUtils.fromJson(json);
+        if (!(value instanceof Map)) {
+            throw new IOException("karate worker " + id + ": unexpected response " + json);
+        }
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+            map.put(String.valueOf(entry.getKey()), entry.getValue());
+        }
+        return map;
+    }
+
+    private HttpURLConnection connect(String method, String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http", InetAddress.getLoopbackAddress().getHostAddress(), port, path).openConnection();
+        connection.setRequestMethod(method);
+        return connection;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8 * 1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,205 @@
+package vscode;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * With <code>vscode.workers=N</code> {@link KarateTestProcess} runs each karate execution in one of N worker JVMs
+ * instead of its own, so concurrent runs don't share system properties, static state or log files.
+ *
+ * Workers are started in advance and warmed up, and replaced in the background after
+ * <code>vscode.workers.maxRuns</code> runs (default 100) or when their heap after gc grew more than
+ * <code>vscode.workers.maxHeapGrowthMb</code> (default 512) since they started.
+ *
+ * Workers that fail to start are launched again with a delay doubling up to
+ * <code>vscode.workers.maxLaunchBackoffMillis</code> (default 60000). While none could be started after
+ * <code>vscode.workers.maxLaunchFailures</code> attempts in a row (default 3) runs are executed in this process.
+ *
+ * @author ivangsa
+ */
+class KarateWorkerPool {
+
+    static final String WORKERS = "vscode.workers";
+    static final String MAX_RUNS = "vscode.workers.maxRuns";
+    static final String MAX_HEAP_GROWTH_MB = "vscode.workers.maxHeapGrowthMb";
+    static final String MAX_LAUNCH_FAILURES = "vscode.workers.maxLaunchFailures";
+    static final String MAX_LAUNCH_BACKOFF_MILLIS = "vscode.workers.maxLaunchBackoffMillis";
+
+    private static final Logger log = LoggerFactory.getLogger(KarateWorkerPool.class);
+
+    private static final long IDLE_TIMEOUT_SECONDS = 120;
+
+    private final int size;
+    private final int maxRuns;
+    private final long maxHeapGrowth;
+    private final int maxLaunchFailures;
+    private final long maxLaunchBackoffMillis;
+    private final BlockingQueue<KarateWorker> idle = new LinkedBlockingQueue<>();
+    private final List<KarateWorker> workers = new ArrayList<>();
+    private final AtomicInteger nextId = new AtomicInteger(1);
+    private final AtomicInteger launchFailures = new AtomicInteger();
+    private final ExecutorService launcher;
+    private volatile boolean shutdown;
+
+    KarateWorkerPool(int size) {
+        this(size, Integer.getInteger(MAX_RUNS, 100), Long.getLong(MAX_HEAP_GROWTH_MB, 512));
+    }
+
+    KarateWorkerPool(int size, int maxRuns, long maxHeapGrowthMb) {
+        this.size = size;
+        this.maxRuns = maxRuns;
+        this.maxHeapGrowth = maxHeapGrowthMb * 1024 * 1024;
+        this.maxLaunchFailures = Math.max(1, Integer.getInteger(MAX_LAUNCH_FAILURES, 3));
+        this.maxLaunchBackoffMillis = Math.max(1000, Long.getLong(MAX_LAUNCH_BACKOFF_MILLIS, 60000));
+        this.launcher = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "karate-worker-launcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "karate-worker-shutdown"));
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Starts all the workers in the background.
+     */
+    void start() {
+        for (int i = 0; i < size; i++) {
+            launch();
+        }
+    }
+
+    /**
+     * @return false while no worker could be started after repeated attempts.
+     */
+    boolean isUsable() {
+        if (launchFailures.get() < maxLaunchFailures) {
+            return true;
+        }
+        synchronized (workers) {
+            return !workers.isEmpty();
+        }
+    }
+
+    /**
+     * Executes the run in the next idle worker, waiting for one if all are busy.
+     *
+     * @return the final run status in the worker, or null if the pool is not usable and the run was not executed.
+     */
+    Map<String, Object> execute(KarateRun run) throws IOException, InterruptedException {
+        KarateWorker worker = null;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(IDLE_TIMEOUT_SECONDS);
+        while (worker == null && System.nanoTime() < deadline) {
+            if (!isUsable()) {
+                return null;
+            }
+            worker = idle.poll(1, TimeUnit.SECONDS);
+        }
+        if (worker == null) {
+            throw new IOException("no karate worker available after " + IDLE_TIMEOUT_SECONDS + " seconds");
+        }
+        boolean recycle = true;
+        try {
+            log.debug("Executing run {} in worker {}", run.id, worker.id);
+            Map<String, Object> result = worker.execute(run);
+            recycle = mustRecycle(worker);
+            return result;
+        } finally {
+            if (recycle) {
+                retire(worker);
+                launch();
+            } else {
+                idle.add(worker);
+            }
+        }
+    }
+
+    void shutdown() {
+        shutdown = true;
+        launcher.shutdownNow();
+        List<KarateWorker> stopping;
+        synchronized (workers) {
+            stopping = new ArrayList<>(workers);
+            workers.clear();
+        }
+        for (KarateWorker worker : stopping) {
+            worker.stop();
+        }
+    }
+
+    private boolean mustRecycle(KarateWorker worker) {
+        if (!worker.isAlive() || worker.getRuns() >= maxRuns) {
+            return true;
+        }
+        try {
+            return worker.heapGrowth() > maxHeapGrowth;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    private void retire(KarateWorker worker) {
+        synchronized (workers) {
+            workers.remove(worker);
+        }
+        log.debug("Recycling worker {} after {} runs", worker.id, worker.getRuns());
+        if (shutdown) {
+            worker.stop();
+        } else {
+            launcher.execute(worker::stop);
+        }
+    }
+
+    private void launch() {
+        if (shutdown) {
+            return;
+        }
+        launcher.execute(() -> {
+            long backoff = 1000;
+            while (!shutdown) {
+                try {
+                    KarateWorker worker = KarateWorker.start(nextId.getAndIncrement());
+                    synchronized (workers) {
+                        if (shutdown) {
+                            worker.stop();
+                            return;
+                        }
+                        workers.add(worker);
+                    }
+                    launchFailures.set(0);
+                    idle.add(worker);
+                    return;
+                } catch (IOException e) {
+                    if (launchFailures.incrementAndGet() == maxLaunchFailures) {
+                        log.error("Could not start karate workers, runs are executed in this process until one starts");
+                    }
+                    log.error("Could not start karate worker, retrying in {} ms: {}", backoff, e.getMessage(), e);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                backoff = Math.min(backoff * 2, maxLaunchBackoffMillis);
+            }
+        });
+    }
+}
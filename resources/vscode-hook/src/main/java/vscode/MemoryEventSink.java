@@ -0,0 +1,56 @@
+package vscode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Keeps the last events in a lock-free ring buffer, older events are overwritten. Meant for tests and tooling running
+ * in the same JVM as Karate.
+ *
+ * @author ivangsa
+ */
+class MemoryEventSink implements EventSink {
+
+    static final int DEFAULT_CAPACITY = 1024;
+
+    private final AtomicReferenceArray<VSCodeSocketRuntimeHook.Event> slots;
+    private final int mask;
+    private final AtomicLong sequence = new AtomicLong();
+
+    MemoryEventSink(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    @Override
+    public void send(VSCodeSocketRuntimeHook.Event event) {
+        long index = sequence.getAndIncrement();
+        slots.lazySet((int) (index & mask), event);
+    }
+
+    /**
+     * @return number of events received so far, including overwritten ones.
+     */
+    long count() {
+        return sequence.get();
+    }
+
+    /**
+     * @return the retained events, oldest first. Events still being published concurrently may be missing.
+     */
+    List<VSCodeSocketRuntimeHook.Event> events() {
+        long end = sequence.get();
+        long start = Math.max(0, end - slots.length());
+        List<VSCodeSocketRuntimeHook.Event> events = new ArrayList<>((int) (end - start));
+        for (long i = start; i < end; i++) {
+            VSCodeSocketRuntimeHook.Event event = slots.get((int) (i & mask));
+            if (event != null) {
+                events.add(event);
+            }
+        }
+        return events;
+    }
+}
@@ -0,0 +1,40 @@
+package vscode;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Http payload sent to the IDE: the first <code>length</code> bytes of the raw body followed by an optional suffix, like
+ * the truncation marker. Body bytes are referenced as they come from Karate, they are never copied nor decoded into a
+ * String before being written to the socket.
+ *
+ * @author ivangsa
+ */
+final class Payload {
+
+    private static final byte[] NO_SUFFIX = new byte[0];
+
+    final byte[] bytes;
+    final int length;
+    final byte[] suffix;
+
+    Payload(byte[] bytes, int length, byte[] suffix) {
+        this.bytes = bytes;
+        this.length = length;
+        this.suffix = suffix != null ? suffix : NO_SUFFIX;
+    }
+
+    Payload(byte[] bytes) {
+        this(bytes, bytes.length, NO_SUFFIX);
+    }
+
+    static Payload of(String text) {
+        return text != null ? new Payload(text.getBytes(UTF_8)) : null;
+    }
+
+    /**
+     * @return size in bytes, including the suffix.
+     */
+    int size() {
+        return length + suffix.length;
+    }
+}
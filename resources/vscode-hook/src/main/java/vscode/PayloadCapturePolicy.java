@@ -0,0 +1,94 @@
+package vscode;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Decides which http payloads are sent to the IDE, configured with system properties:
+ *
+ * <ul>
+ *     <li><code>vscode.payload.maxSize</code>: max payload size in bytes, bigger payloads are truncated (default unlimited)</li>
+ *     <li><code>vscode.payload.truncationMarker</code>: appended to truncated payloads (default <code>...[truncated]</code>)</li>
+ *     <li><code>vscode.payload.skipBinary</code>: do not send payloads with non-textual content types (default false)</li>
+ *     <li><code>vscode.payload.sampleRate</code>: send payloads for 1 in N http calls (default 1)</li>
+ *     <li><code>vscode.payload.headersOnlyOnSuccess</code>: do not send response payloads for non-error status codes (default false)</li>
+ * </ul>
+ *
+ * Decisions are made from the raw body bytes and content type, so discarded payloads are never decoded into Strings.
+ *
+ * @author ivangsa
+ */
+class PayloadCapturePolicy {
+
+    static final String MAX_SIZE = "vscode.payload.maxSize";
+    static final String TRUNCATION_MARKER = "vscode.payload.truncationMarker";
+    static final String SKIP_BINARY = "vscode.payload.skipBinary";
+    static final String SAMPLE_RATE = "vscode.payload.sampleRate";
+    static final String HEADERS_ONLY_ON_SUCCESS = "vscode.payload.headersOnlyOnSuccess";
+
+    private static final String[] TEXT_CONTENT_TYPES = {"text/", "json", "xml", "javascript", "x-www-form-urlencoded", "yaml", "csv", "html", "graphql"};
+
+    final int maxSize;
+    final String truncationMarker;
+    private final byte[] truncationMarkerBytes;
+    final boolean skipBinary;
+    final int sampleRate;
+    final boolean headersOnlyOnSuccess;
+
+    private final AtomicLong calls = new AtomicLong();
+
+    PayloadCapturePolicy() {
+        maxSize = Integer.getInteger(MAX_SIZE, -1);
+        truncationMarker = System.getProperty(TRUNCATION_MARKER, "...[truncated]");
+        truncationMarkerBytes = truncationMarker.getBytes(UTF_8);
+        skipBinary = Boolean.getBoolean(SKIP_BINARY);
+        sampleRate = Math.max(1, Integer.getInteger(SAMPLE_RATE, 1));
+        headersOnlyOnSuccess = Boolean.getBoolean(HEADERS_ONLY_ON_SUCCESS);
+    }
+
+    /**
+     * Called once per http call, tells whether its request and response payloads should be captured.
+     */
+    boolean sample() {
+        return sampleRate == 1 || calls.getAndIncrement() % sampleRate == 0;
+    }
+
+    boolean capturesResponse(int status) {
+        return !headersOnlyOnSuccess || status >= 400;
+    }
+
+    /**
+     * @return the payload to send to the IDE, truncated if needed, or null if it should not be sent. Truncated payloads
+     *         are a slice of the body, no bytes are copied.
+     */
+    Payload payload(byte[] body, String contentType) {
+        if (body == null) {
+            return null;
+        }
+        if (skipBinary && !isText(contentType)) {
+            return Payload.of(String.format("[%s bytes of %s]", body.length, contentType));
+        }
+        if (maxSize < 0 || body.length <= maxSize) {
+            return new Payload(body);
+        }
+        int length = maxSize;
+        while (length > 0 && (body[length] & 0xC0) == 0x80) {
+            length--; // do not split multibyte chars
+        }
+        return new Payload(body, length, truncationMarkerBytes);
+    }
+
+    static boolean isText(String contentType) {
+        if (contentType == null) {
+            return true;
+        }
+        String lowerCase = contentType.toLowerCase();
+        for (String textContentType : TEXT_CONTENT_TYPES) {
+            if (lowerCase.contains(textContentType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,98 @@
+package vscode;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static java.nio.file.StandardOpenOption.DELETE_ON_CLOSE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Append-only temporary file, memory mapped up to a fixed size, where events are kept while the IDE is not reachable.
+ *
+ * Not thread safe, only used from the sender thread.
+ *
+ * @author ivangsa
+ */
+class SpillFile implements Closeable {
+
+    private final FileChannel file;
+    private final MappedByteBuffer buffer;
+    // where replay resumes, always at the start of an append
+    private int readIndex;
+    // end offset of each append, so a failed replay resumes at the start of the first one not fully written
+    private int[] ends = new int[64];
+    private int firstEnd;
+    private int endCount;
+
+    SpillFile(long maxBytes) throws IOException {
+        Path path = Files.createTempFile("karate-ide-events", ".spill");
+        this.file = FileChannel.open(path, READ, WRITE, DELETE_ON_CLOSE);
+        this.buffer = file.map(FileChannel.MapMode.READ_WRITE, 0, Math.min(maxBytes, Integer.MAX_VALUE));
+    }
+
+    /**
+     * Appends all the buffers or none of them.
+     *
+     * @return false if there is not enough room left.
+     */
+    boolean append(ByteBuffer... buffers) {
+        long length = 0;
+        for (ByteBuffer b : buffers) {
+            length += b.remaining();
+        }
+        if (length > buffer.remaining()) {
+            return false;
+        }
+        for (ByteBuffer b : buffers) {
+            buffer.put(b);
+        }
+        if (endCount == ends.length) {
+            ends = Arrays.copyOf(ends, ends.length * 2);
+        }
+        ends[endCount++] = buffer.position();
+        return true;
+    }
+
+    /**
+     * @return bytes appended and not replayed yet.
+     */
+    int size() {
+        return buffer.position() - readIndex;
+    }
+
+    /**
+     * Writes everything appended and not replayed yet to the channel, in order, and empties the file once all of it
+     * has been written. If writing fails only the appends not fully written are kept, so they are replayed again from
+     * their start, and the ones already delivered are not sent twice.
+     */
+    void replay(WritableByteChannel channel) throws IOException {
+        ByteBuffer data = buffer.duplicate();
+        data.limit(buffer.position()).position(readIndex);
+        try {
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        } finally {
+            while (firstEnd < endCount && ends[firstEnd] <= data.position()) {
+                readIndex = ends[firstEnd++];
+            }
+        }
+        buffer.clear();
+        readIndex = 0;
+        firstEnd = 0;
+        endCount = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
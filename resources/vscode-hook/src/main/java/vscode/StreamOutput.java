@@ -0,0 +1,107 @@
+package vscode;
+
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
+
+/**
+ * Writes encoded events to an output stream, like stdout or a file. The stream is opened lazily from the sender thread
+ * and flushed after every write. If it can not be opened or a write fails, events are discarded.
+ *
+ * Each write is a single call to the stream, so lines are not interleaved with other output to a shared
+ * <code>PrintStream</code> like <code>System.out</code>.
+ *
+ * @author ivangsa
+ */
+class StreamOutput implements EventOutput {
+
+    private org.slf4j.Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private final Callable<OutputStream> opener;
+    private static final int MAX_GATHER_SIZE = 1024 * 1024;
+
+    private byte[] gather = new byte[8 * 1024];
+
+    private OutputStream out;
+    private boolean failed;
+    private long droppedBytes;
+
+    StreamOutput(Callable<OutputStream> opener) {
+        this.opener = opener;
+    }
+
+    @Override
+    public boolean open() {
+        if (out == null && !failed) {
+            try {
+                out = opener.call();
+            } catch (Exception e) {
+                log.warn("VSCodeHook can not open event output: {}", e.getMessage());
+                failed = true;
+            }
+        }
+        return out != null;
+    }
+
+    @Override
+    public void write(ByteBuffer... buffers) {
+        if (!open()) {
+            discard(buffers);
+            return;
+        }
+        try {
+            if (buffers.length == 1 && buffers[0].hasArray()) {
+                ByteBuffer b = buffers[0];
+                out.write(b.array(), b.arrayOffset() + b.position(), b.remaining());
+                b.position(b.limit());
+            } else {
+                int length = 0;
+                for (ByteBuffer b : buffers) {
+                    length += b.remaining();
+                }
+                if (gather.length < length && length <= MAX_GATHER_SIZE) {
+                    gather = new byte[Math.min(Math.max(length, gather.length * 2), MAX_GATHER_SIZE)];
+                }
+                // bigger events, like large payloads, are not kept around
+                byte[] bytes = length <= gather.length ? gather : new byte[length];
+                int position = 0;
+                for (ByteBuffer b : buffers) {
+                    int remaining = b.remaining();
+                    b.get(bytes, position, remaining);
+                    position += remaining;
+                }
+                out.write(bytes, 0, length);
+            }
+            out.flush();
+        } catch (IOException e) {
+            log.debug("VSCodeHook error", e);
+            discard(buffers);
+        }
+    }
+
+    private void discard(ByteBuffer... buffers) {
+        for (ByteBuffer b : buffers) {
+            droppedBytes += b.remaining();
+            b.position(b.limit());
+        }
+    }
+
+    @Override
+    public void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                log.debug("VSCodeHook error", e);
+            }
+            out = null;
+        }
+        failed = false;
+        if (droppedBytes > 0) {
+            log.debug("VSCodeHook could not write {} bytes of events", droppedBytes);
+        }
+    }
+}
@@ -11,8 +11,8 @@ import com.intuit.karate.http.HttpRequest;
 import com.intuit.karate.http.Response;
 import org.slf4j.LoggerFactory;
 
-import java.util.Arrays;
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
 
 import static vscode.compatibility.KarateCompatibility.feature;
@@ -24,14 +24,52 @@ public class VSCodeHook implements RuntimeHook {
 
     private org.slf4j.Logger log = LoggerFactory.getLogger(this.getClass());
 
-    private List<ExtendedRuntimeHook> runtimeHooks;
+    // dispatch tables: for each event, the hooks consuming it, so unused callbacks like steps are cheap to dispatch
+    private final ExtendedRuntimeHook[] beforeSuiteHooks;
+    private final ExtendedRuntimeHook[] afterSuiteHooks;
+    private final ExtendedRuntimeHook[] beforeFeatureHooks;
+    private final ExtendedRuntimeHook[] afterFeatureHooks;
+    private final ExtendedRuntimeHook[] beforeScenarioOutlineHooks;
+    private final ExtendedRuntimeHook[] afterScenarioOutlineHooks;
+    private final ExtendedRuntimeHook[] beforeScenarioHooks;
+    private final ExtendedRuntimeHook[] afterScenarioHooks;
+    private final ExtendedRuntimeHook[] beforeStepHooks;
+    private final ExtendedRuntimeHook[] afterStepHooks;
+    private final ExtendedRuntimeHook[] beforeHttpCallHooks;
+    private final ExtendedRuntimeHook[] afterHttpCallHooks;
 
     public VSCodeHook() {
         this(new VSCodeOutputRuntimeHook(), new VSCodeSocketRuntimeHook());
     }
 
     public VSCodeHook(ExtendedRuntimeHook... runtimeHooks) {
-        this.runtimeHooks = runtimeHooks != null? Arrays.asList(runtimeHooks) : Collections.emptyList();
+        ExtendedRuntimeHook[] hooks = runtimeHooks != null ? runtimeHooks : new ExtendedRuntimeHook[0];
+        List<EnumSet<HookEvent>> events = new ArrayList<>(hooks.length);
+        for (ExtendedRuntimeHook hook : hooks) {
+            events.add(hook.getEvents());
+        }
+        this.beforeSuiteHooks = consuming(hooks, events, HookEvent.BEFORE_SUITE);
+        this.afterSuiteHooks = consuming(hooks, events, HookEvent.AFTER_SUITE);
+        this.beforeFeatureHooks = consuming(hooks, events, HookEvent.BEFORE_FEATURE);
+        this.afterFeatureHooks = consuming(hooks, events, HookEvent.AFTER_FEATURE);
+        this.beforeScenarioOutlineHooks = consuming(hooks, events, HookEvent.BEFORE_SCENARIO_OUTLINE);
+        this.afterScenarioOutlineHooks = consuming(hooks, events, HookEvent.AFTER_SCENARIO_OUTLINE);
+        this.beforeScenarioHooks = consuming(hooks, events, HookEvent.BEFORE_SCENARIO);
+        this.afterScenarioHooks = consuming(hooks, events, HookEvent.AFTER_SCENARIO);
+        this.beforeStepHooks = consuming(hooks, events, HookEvent.BEFORE_STEP);
+        this.afterStepHooks = consuming(hooks, events, HookEvent.AFTER_STEP);
+        this.beforeHttpCallHooks = consuming(hooks, events, HookEvent.BEFORE_HTTP_CALL);
+        this.afterHttpCallHooks = consuming(hooks, events, HookEvent.AFTER_HTTP_CALL);
+    }
+
+    private static ExtendedRuntimeHook[] consuming(ExtendedRuntimeHook[] hooks, List<EnumSet<HookEvent>> events, HookEvent event) {
+        List<ExtendedRuntimeHook> result = new ArrayList<>(hooks.length);
+        for (int i = 0; i < hooks.length; i++) {
+            if (events.get(i).contains(event)) {
+                result.add(hooks[i]);
+            }
+        }
+        return result.toArray(new ExtendedRuntimeHook[0]);
     }
 
     // used to track feature end when no scenarios where selected
@@ -39,15 +77,29 @@ public class VSCodeHook implements RuntimeHook {
     // used to track scenario outline start/stop
     private ThreadLocal<ScenarioOutline> currentOutline = new ThreadLocal<>();
     private ThreadLocal<ScenarioRuntime> currentScenarioRuntime = new ThreadLocal<>();
+    // run being executed by KarateTestProcess, if any, checked for cancellation
+    private volatile KarateRun run;
 
     @Override
     public void beforeSuite(Suite suite) {
-        runtimeHooks.stream().forEach(h -> h.beforeSuite(suite));
+        run = KarateRun.current();
+        if (run != null) {
+            run.attach(suite);
+        }
+        for (ExtendedRuntimeHook hook : beforeSuiteHooks) {
+            hook.beforeSuite(suite);
+        }
     }
 
     @Override
     public void afterSuite(Suite suite) {
-        runtimeHooks.stream().forEach(h -> h.afterSuite(suite));
+        for (ExtendedRuntimeHook hook : afterSuiteHooks) {
+            hook.afterSuite(suite);
+        }
+        if (run != null) {
+            run.detach();
+            run = null;
+        }
     }
 
     @Override
@@ -56,62 +108,101 @@ public class VSCodeHook implements RuntimeHook {
             // fixes afterFeature not being called for empty features (no scenarios selected by tags)
             afterFeature(fr);
         }
-        this.currentFeature.set(feature(fr).getNameForReport());
-        return runtimeHooks.stream().reduce(true, (accumulated, hook) -> hook.beforeFeature(fr), (accumulated, current) -> accumulated && current);
+        this.currentFeature.set(FeatureInfo.of(feature(fr)).nameForReport);
+        boolean result = true;
+        for (ExtendedRuntimeHook hook : beforeFeatureHooks) {
+            result &= hook.beforeFeature(fr);
+        }
+        return result;
     }
 
     @Override
     public void afterFeature(FeatureRuntime fr) {
         if (fr.caller.depth == 0 && currentOutline.get() != null) {
-            runtimeHooks.stream().forEach(h -> h.afterScenarioOutline(currentOutline.get(), currentScenarioRuntime.get()));
+            for (ExtendedRuntimeHook hook : afterScenarioOutlineHooks) {
+                hook.afterScenarioOutline(currentOutline.get(), currentScenarioRuntime.get());
+            }
             currentOutline.set(null);
             currentScenarioRuntime.set(null);
         }
-        runtimeHooks.stream().forEach(h -> h.afterFeature(fr));
+        for (ExtendedRuntimeHook hook : afterFeatureHooks) {
+            hook.afterFeature(fr);
+        }
         currentFeature.set(null);
     }
 
     @Override
     public boolean beforeScenario(ScenarioRuntime sr) {
+        if (isCancelled()) {
+            return false;
+        }
         sr.evaluateScenarioName();
 
         if (sr.caller.depth == 0) {
             ScenarioOutline scenarioOutline = sr.scenario.getSection().isOutline() ? sr.scenario.getSection().getScenarioOutline() : null;
             if (currentOutline.get() != null && !currentOutline.get().equals(scenarioOutline)) { // changing from an outline
-                runtimeHooks.stream().forEach(h -> h.afterScenarioOutline(currentOutline.get(), sr));
+                for (ExtendedRuntimeHook hook : afterScenarioOutlineHooks) {
+                    hook.afterScenarioOutline(currentOutline.get(), sr);
+                }
                 currentOutline.set(null);
             }
             if (scenarioOutline != null && !scenarioOutline.equals(currentOutline.get())) { // entering an outline
                 currentOutline.set(scenarioOutline);
-                runtimeHooks.stream().forEach(h -> h.beforeScenarioOutline(sr.scenario.getSection().getScenarioOutline(), sr));
+                for (ExtendedRuntimeHook hook : beforeScenarioOutlineHooks) {
+                    hook.beforeScenarioOutline(scenarioOutline, sr);
+                }
             }
             currentScenarioRuntime.set(sr);
         }
 
-        return runtimeHooks.stream().reduce(true, (accumulated, hook) -> hook.beforeScenario(sr), (accumulated, current) -> accumulated && current);
+        boolean result = true;
+        for (ExtendedRuntimeHook hook : beforeScenarioHooks) {
+            result &= hook.beforeScenario(sr);
+        }
+        return result;
     }
 
     @Override
     public void afterScenario(ScenarioRuntime sr) {
-        runtimeHooks.stream().forEach(h -> h.afterScenario(sr));
+        for (ExtendedRuntimeHook hook : afterScenarioHooks) {
+            hook.afterScenario(sr);
+        }
     }
 
     @Override
     public boolean beforeStep(Step step, ScenarioRuntime sr) {
-        return runtimeHooks.stream().reduce(true, (accumulated, hook) -> hook.beforeStep(step, sr), (accumulated, current) -> accumulated && current);
+        if (isCancelled()) {
+            return false;
+        }
+        boolean result = true;
+        for (ExtendedRuntimeHook hook : beforeStepHooks) {
+            result &= hook.beforeStep(step, sr);
+        }
+        return result;
     }
 
     @Override
     public void afterStep(StepResult result, ScenarioRuntime sr) {
-        runtimeHooks.stream().forEach(h -> h.afterStep(result, sr));
+        for (ExtendedRuntimeHook hook : afterStepHooks) {
+            hook.afterStep(result, sr);
+        }
+    }
+
+    private boolean isCancelled() {
+        KarateRun run = this.run;
+        return run != null && run.isCancelled();
     }
 
     public void beforeHttpCall(HttpRequest request, ScenarioRuntime sr) {
-        runtimeHooks.stream().forEach(h -> h.beforeHttpCall(request, sr));
+        for (ExtendedRuntimeHook hook : beforeHttpCallHooks) {
+            hook.beforeHttpCall(request, sr);
+        }
     }
 
     public void afterHttpCall(HttpRequest request, Response response, ScenarioRuntime sr) {
-        runtimeHooks.stream().forEach(h -> h.afterHttpCall(request, response, sr));
+        for (ExtendedRuntimeHook hook : afterHttpCallHooks) {
+            hook.afterHttpCall(request, response, sr);
+        }
     }
 
 //    @Override
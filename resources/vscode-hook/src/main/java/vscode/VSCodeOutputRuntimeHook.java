@@ -7,26 +7,65 @@ import com.intuit.karate.core.ScenarioOutline;
 import com.intuit.karate.core.ScenarioRuntime;
 import org.slf4j.LoggerFactory;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 import static vscode.compatibility.KarateCompatibility.feature;
 import static vscode.compatibility.KarateCompatibility.features;
 
 /**
+ * Prints <code>##vscode</code> events to stdout.
+ *
+ * With <code>-Dvscode.output.quiet=true</code> start events and passed scenarios are not printed, instead pass/fail
+ * counters are kept per feature and printed as <code>testProgress</code> events every
+ * <code>vscode.output.progressMillis</code> and when the suite finishes, along with the features finished since the
+ * previous one. Failures are still printed as they happen.
+ *
  * @author ivangsa
  */
 public class VSCodeOutputRuntimeHook implements ExtendedRuntimeHook {
 
+    static final String QUIET = "vscode.output.quiet";
+    static final String PROGRESS_MILLIS = "vscode.output.progressMillis";
+
     private org.slf4j.Logger log = LoggerFactory.getLogger(this.getClass());
 
+    private final boolean quiet = Boolean.getBoolean(QUIET);
+    private final long progressNanos = Long.getLong(PROGRESS_MILLIS, 1000) * 1_000_000L;
+    private final Map<String, FeatureCounters> counters = new ConcurrentHashMap<>();
+    private final AtomicLong lastProgress = new AtomicLong();
+    // run being executed by KarateTestProcess, if any, its events can be streamed by KarateControlServer
+    private volatile KarateRun run;
+
+    private static class FeatureCounters {
+        final LongAdder passed = new LongAdder();
+        final LongAdder failed = new LongAdder();
+        volatile boolean finished;
+        boolean reported;
+    }
+
+    @Override
+    public EnumSet<HookEvent> getEvents() {
+        if (quiet) {
+            return EnumSet.of(HookEvent.BEFORE_SUITE, HookEvent.AFTER_SUITE, HookEvent.AFTER_FEATURE, HookEvent.AFTER_SCENARIO);
+        }
+        return EnumSet.range(HookEvent.BEFORE_SUITE, HookEvent.AFTER_SCENARIO);
+    }
 
     @Override
     public void beforeSuite(Suite suite) {
+        run = KarateRun.current();
         try {
-            String features = features(suite).stream().map(f -> f.getResource().getRelativePath()).collect(Collectors.joining(";"));
-            println(String.format(SUITE_STARTED, getCurrentTime(), features, suite.featuresFound));
+            String features = features(suite).stream().map(f -> FeatureInfo.of(f).relativePath).collect(Collectors.joining(";"));
+            print(String.format(SUITE_STARTED, getCurrentTime(), features, suite.featuresFound));
+            if (quiet) {
+                counters.clear();
+                lastProgress.set(EventClock.nanos());
+            }
             // log.trace(String.format(SUITE_STARTED, getCurrentTime(), features, suite.featuresFound));
         } catch (Exception e) {
             log.error("beforeSuite error: {}", e.getMessage());
@@ -36,7 +75,10 @@ public class VSCodeOutputRuntimeHook implements ExtendedRuntimeHook {
     @Override
     public void afterSuite(Suite suite) {
         try {
-            println(String.format(SUITE_FINISHED, getCurrentTime(), suite.buildResults().getEndTime() - suite.startTime));
+            if (quiet) {
+                printProgress();
+            }
+            print(String.format(SUITE_FINISHED, getCurrentTime(), suite.buildResults().getEndTime() - suite.startTime));
             // log.trace(String.format(SUITE_FINISHED, getCurrentTime(), suite.buildResults().getEndTime() - suite.startTime));
         } catch (Exception e) {
             log.error("afterSuite error: {}", e.getMessage());
@@ -47,9 +89,9 @@ public class VSCodeOutputRuntimeHook implements ExtendedRuntimeHook {
     @Override
     public boolean beforeFeature(FeatureRuntime fr) {
         try {
-            if (fr.caller.depth == 0) {
-                String path = feature(fr).getResource().getRelativePath();
-                println(String.format(FEATURE_STARTED, getCurrentTime(), path + ":" + feature(fr).getLine(), escape(feature(fr).getNameForReport())));
+            if (fr.caller.depth == 0 && !quiet) {
+                FeatureInfo feature = FeatureInfo.of(feature(fr));
+                print(String.format(FEATURE_STARTED, getCurrentTime(), feature.locationHint, feature.escapedNameForReport));
                 // log.trace(String.format(FEATURE_STARTED, getCurrentTime(), path + ":" + feature(fr).getLine(), escape(feature(fr).getNameForReport())));
             }
         } catch (Exception e) {
@@ -61,9 +103,14 @@ public class VSCodeOutputRuntimeHook implements ExtendedRuntimeHook {
     @Override
     public void afterFeature(FeatureRuntime fr) {
         try {
-            if (fr.caller.depth == 0) {
-                String path = feature(fr).getResource().getRelativePath();
-                println(String.format(FEATURE_FINISHED, getCurrentTime(), path + ":" + feature(fr).getLine(), (int) fr.result.getDurationMillis(), escape(feature(fr).getNameForReport())));
+            if (fr.caller.depth == 0 && quiet) {
+                FeatureCounters feature = counters.get(FeatureInfo.of(feature(fr)).locationHint);
+                if (feature != null) {
+                    feature.finished = true;
+                }
+            } else if (fr.caller.depth == 0) {
+                FeatureInfo feature = FeatureInfo.of(feature(fr));
+                print(String.format(FEATURE_FINISHED, getCurrentTime(), feature.locationHint, (int) fr.result.getDurationMillis(), feature.escapedNameForReport));
                 // log.trace(String.format(FEATURE_FINISHED, getCurrentTime(), path + ":" + feature(fr).getLine(), (int) fr.result.getDurationMillis(), escape(feature(fr).getNameForReport())));
             }
         } catch (Exception e) {
@@ -74,9 +121,9 @@ public class VSCodeOutputRuntimeHook implements ExtendedRuntimeHook {
     @Override
     public boolean beforeScenario(ScenarioRuntime sr) {
         try {
-            if (sr.caller.depth == 0) {
-                String path = sr.scenario.getFeature().getResource().getRelativePath();
-                println(String.format(SCENARIO_STARTED, getCurrentTime(), path + ":" + sr.scenario.getLine(), escape(sr.scenario.getRefIdAndName()), sr.scenario.isOutlineExample(), sr.scenario.isDynamic()));
+            if (sr.caller.depth == 0 && !quiet) {
+                String path = FeatureInfo.of(sr.scenario.getFeature()).relativePath;
+                print(String.format(SCENARIO_STARTED, getCurrentTime(), path + ":" + sr.scenario.getLine(), escape(sr.scenario.getRefIdAndName()), sr.scenario.isOutlineExample(), sr.scenario.isDynamic()));
                 // log.trace(String.format(SCENARIO_STARTED, getCurrentTime(), path + ":" + sr.scenario.getLine(), escape(sr.scenario.getRefIdAndName()), sr.scenario.isOutlineExample(), sr.scenario.isDynamic()));
             }
         } catch (Exception e) {
@@ -90,15 +137,18 @@ public class VSCodeOutputRuntimeHook implements ExtendedRuntimeHook {
         try {
             // System.out.println(String.format("#vscode afterScenario %s %s", sr.caller.depth, sr.scenario.getRefIdAndName()));
             if (sr.caller.depth == 0) {
-                String path = sr.scenario.getFeature().getResource().getRelativePath();
+                String path = FeatureInfo.of(sr.scenario.getFeature()).relativePath;
                 if (sr.result.isFailed()) {
                     StringUtils.Pair error = details(sr.result.getErrorMessage());
-                    println(String.format(SCENARIO_FAILED, getCurrentTime(), path + ":" + sr.scenario.getLine(), (int) sr.result.getDurationMillis(), sr.scenario.isOutlineExample(), sr.scenario.isDynamic(), escape(error.right), escape(error.left), escape(sr.scenario.getRefIdAndName()), ""));
+                    print(String.format(SCENARIO_FAILED, getCurrentTime(), path + ":" + sr.scenario.getLine(), (int) sr.result.getDurationMillis(), sr.scenario.isOutlineExample(), sr.scenario.isDynamic(), escape(error.right), escape(error.left), escape(sr.scenario.getRefIdAndName()), quiet ? ", \"quiet\": true" : ""));
                     // log.trace(String.format(SCENARIO_FAILED, getCurrentTime(), path + ":" + feature(fr).getLine(), (int) sr.result.getDurationMillis(), sr.scenario.isOutlineExample(), sr.scenario.isDynamic(), escape(error.right), escape(error.right), escape(error.left), escape(sr.scenario.getRefIdAndName()), ""));
-                } else {
-                    println(String.format(SCENARIO_FINISHED, getCurrentTime(), path + ":" + sr.scenario.getLine(), (int) sr.result.getDurationMillis(), sr.scenario.isOutlineExample(), sr.scenario.isDynamic(), escape(sr.scenario.getRefIdAndName())));
+                } else if (!quiet) {
+                    print(String.format(SCENARIO_FINISHED, getCurrentTime(), path + ":" + sr.scenario.getLine(), (int) sr.result.getDurationMillis(), sr.scenario.isOutlineExample(), sr.scenario.isDynamic(), escape(sr.scenario.getRefIdAndName())));
                     // log.trace(String.format(SCENARIO_FINISHED, getCurrentTime(), path + ":" + feature(fr).getLine(), (int) sr.result.getDurationMillis(), sr.scenario.isOutlineExample(), sr.scenario.isDynamic(), escape(sr.scenario.getRefIdAndName())));
                 }
+                if (quiet) {
+                    count(sr);
+                }
             }
         } catch (Exception e) {
             log.error("afterScenario error: {}", e.getMessage());
@@ -108,10 +158,10 @@ public class VSCodeOutputRuntimeHook implements ExtendedRuntimeHook {
     @Override
     public boolean beforeScenarioOutline(ScenarioOutline scenarioOutline, ScenarioRuntime sr) {
         try {
-            if (sr.caller.depth == 0) {
-                String path = sr.scenario.getFeature().getResource().getRelativePath();
+            if (sr.caller.depth == 0 && !quiet) {
+                String path = FeatureInfo.of(sr.scenario.getFeature()).relativePath;
                 String outlineName = getOutlineName(sr);
-                println(String.format(SCENARIO_OUTLINE_STARTED, getCurrentTime(), path + ":" + sr.scenario.getSection().getScenarioOutline().getLine(), escape(outlineName), sr.scenario.isOutlineExample(), sr.scenario.isDynamic()));
+                print(String.format(SCENARIO_OUTLINE_STARTED, getCurrentTime(), path + ":" + sr.scenario.getSection().getScenarioOutline().getLine(), escape(outlineName), sr.scenario.isOutlineExample(), sr.scenario.isDynamic()));
                 // log.trace(String.format(SCENARIO_OUTLINE_STARTED, getCurrentTime(), path + ":" + sr.scenario.getSection().getScenarioOutline().getLine(), escape(outlineName), sr.scenario.isOutlineExample(), sr.scenario.isDynamic()));
             }
         } catch (Exception e) {
@@ -123,10 +173,10 @@ public class VSCodeOutputRuntimeHook implements ExtendedRuntimeHook {
     @Override
     public void afterScenarioOutline(ScenarioOutline scenarioOutline, ScenarioRuntime sr) {
         try {
-            if (sr.caller.depth == 0) {
-                String path = sr.scenario.getFeature().getResource().getRelativePath();
+            if (sr.caller.depth == 0 && !quiet) {
+                String path = FeatureInfo.of(sr.scenario.getFeature()).relativePath;
                 String outlineName = getOutlineName(sr);
-                println(String.format(SCENARIO_OUTLINE_FINISHED, getCurrentTime(), path + ":" + scenarioOutline.getLine(), (int) sr.result.getDurationMillis(), escape(outlineName)));
+                print(String.format(SCENARIO_OUTLINE_FINISHED, getCurrentTime(), path + ":" + scenarioOutline.getLine(), (int) sr.result.getDurationMillis(), escape(outlineName)));
                 // log.trace(String.format(SCENARIO_OUTLINE_FINISHED, getCurrentTime(), path + ":" + scenarioOutline.getLine(), (int) sr.result.getDurationMillis(), escape(outlineName)));
             }
         } catch (Exception e) {
@@ -135,15 +185,60 @@ public class VSCodeOutputRuntimeHook implements ExtendedRuntimeHook {
     }
 
 
+    private void count(ScenarioRuntime sr) {
+        String locationHint = FeatureInfo.of(sr.scenario.getFeature()).locationHint;
+        FeatureCounters feature = counters.computeIfAbsent(locationHint, k -> new FeatureCounters());
+        (sr.result.isFailed() ? feature.failed : feature.passed).increment();
+        long now = EventClock.nanos();
+        long last = lastProgress.get();
+        if (now - last >= progressNanos && lastProgress.compareAndSet(last, now)) {
+            printProgress();
+        }
+    }
+
+    /**
+     * Prints totals and the counters of the features finished since the last progress event.
+     */
+    private synchronized void printProgress() {
+        long passed = 0;
+        long failed = 0;
+        StringBuilder features = new StringBuilder();
+        for (Map.Entry<String, FeatureCounters> entry : counters.entrySet()) {
+            FeatureCounters feature = entry.getValue();
+            long featurePassed = feature.passed.sum();
+            long featureFailed = feature.failed.sum();
+            passed += featurePassed;
+            failed += featureFailed;
+            if (!feature.finished || feature.reported) {
+                continue;
+            }
+            feature.reported = true;
+            if (features.length() > 0) {
+                features.append(", ");
+            }
+            features.append(String.format(FEATURE_PROGRESS, escape(entry.getKey()), featurePassed, featureFailed));
+        }
+        print(String.format(TEST_PROGRESS, getCurrentTime(), passed, failed, features));
+    }
+
+    private void print(String s) {
+        KarateRun run = this.run;
+        if (run != null) {
+            run.print(s);
+        } else {
+            println(s);
+        }
+    }
+
     static void println(String s) {
         System.out.println(s);
     }
 
     private static String getCurrentTime() {
-        return DATE_FORMAT.format(new Date());
+        return EventClock.currentTime();
     }
 
-    private static String escape(String source) {
+    static String escape(String source) {
         if (source == null) {
             return "";
         }
@@ -164,8 +259,6 @@ public class VSCodeOutputRuntimeHook implements ExtendedRuntimeHook {
         }
     }
 
-    private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd'T'hh:mm:ss.SSSZ");
-
     private static final String SUITE_STARTED = "##vscode {\"event\": \"testSuiteStarted\", \"timestamp\": \"%s\", \"features\": \"%s\", \"featuresFound\": \"%s\"}";
     private static final String FEATURE_STARTED = "##vscode {\"event\": \"featureStarted\", \"timestamp\": \"%s\", \"locationHint\": \"%s\", \"name\": \"%s\"}";
     private static final String SCENARIO_OUTLINE_STARTED = "##vscode {\"event\": \"testOutlineStarted\", \"timestamp\": \"%s\", \"locationHint\": \"%s\", \"name\": \"%s\", \"outline\":%s, \"dynamic\":%s }";
@@ -174,5 +267,7 @@ public class VSCodeOutputRuntimeHook implements ExtendedRuntimeHook {
     private static final String SCENARIO_FINISHED = "##vscode {\"event\": \"testFinished\", \"timestamp\": \"%s\", \"locationHint\": \"%s\", \"duration\": \"%s\", \"outline\":%s, \"dynamic\":%s, \"name\": \"%s\"}";
     private static final String SCENARIO_OUTLINE_FINISHED = "##vscode {\"event\": \"testOutlineFinished\", \"timestamp\": \"%s\", \"locationHint\": \"%s\", \"duration\": \"%s\", \"name\": \"%s\"}";
     private static final String FEATURE_FINISHED = "##vscode {\"event\": \"featureFinished\", \"timestamp\": \"%s\", \"locationHint\": \"%s\", \"duration\": \"%s\", \"name\": \"%s\"}";
+    private static final String TEST_PROGRESS = "##vscode {\"event\": \"testProgress\", \"timestamp\": \"%s\", \"passed\": %s, \"failed\": %s, \"progress\": [%s]}";
+    private static final String FEATURE_PROGRESS = "{\"locationHint\": \"%s\", \"passed\": %s, \"failed\": %s}";
     static final String SUITE_FINISHED = "##vscode {\"event\": \"testSuiteFinished\", \"timestamp\": \"%s\", \"duration\": \"%s\"}";
 }
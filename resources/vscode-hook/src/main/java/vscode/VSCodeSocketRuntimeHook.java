@@ -2,7 +2,6 @@ package vscode;
 
 import com.intuit.karate.StringUtils;
 import com.intuit.karate.Suite;
-import com.intuit.karate.core.Feature;
 import com.intuit.karate.core.FeatureRuntime;
 import com.intuit.karate.core.ScenarioOutline;
 import com.intuit.karate.core.ScenarioRuntime;
@@ -10,25 +9,14 @@ import com.intuit.karate.http.HttpRequest;
 import com.intuit.karate.http.Response;
 import org.slf4j.LoggerFactory;
 
-import java.io.IOException;
-import java.io.StringWriter;
-import java.io.Writer;
-import java.lang.reflect.Field;
-import java.net.InetSocketAddress;
-import java.net.StandardSocketOptions;
-import java.nio.ByteBuffer;
-import java.nio.channels.SocketChannel;
-import java.text.SimpleDateFormat;
 import java.util.Collections;
-import java.util.Date;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeoutException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
-import static java.nio.charset.StandardCharsets.UTF_8;
 import static vscode.compatibility.KarateCompatibility.feature;
 import static vscode.compatibility.KarateCompatibility.getFeatureCallLine;
 
@@ -41,14 +29,20 @@ public class VSCodeSocketRuntimeHook implements ExtendedRuntimeHook {
 
     private final String host;
     private final Integer port;
-    SocketChannel client;
+    final List<EventSink> sinks;
+    private final PayloadCapturePolicy capturePolicy = new PayloadCapturePolicy();
+    private final ThreadLocal<Boolean> capturePayloads = new ThreadLocal<>();
 
     enum EventType {
-        REQUEST, RESPONSE, SUITE_START, SUITE_END, FEATURE_START, FEATURE_END, SCENARIO_START, SCENARIO_END
+        REQUEST, RESPONSE, SUITE_START, SUITE_END, FEATURE_START, FEATURE_END, SCENARIO_START, SCENARIO_END, DEFINE
     }
 
-    class Event {
+    static class Event {
         Long timestamp;
+        /* EventClock nanos when the suite, feature, scenario or http call started */
+        Long startNanos;
+        /* EventClock nanos when it ended, only on end events */
+        Long endNanos;
         EventType eventType;
         String thread;
 
@@ -79,48 +73,102 @@ public class VSCodeSocketRuntimeHook implements ExtendedRuntimeHook {
         String status;
         String failureMessage;
         Map<String, String> headers;
-        String payload;
+        Payload payload;
+
+        Event withoutPayload() {
+            Event event = new Event();
+            event.timestamp = timestamp;
+            event.startNanos = startNanos;
+            event.endNanos = endNanos;
+            event.eventType = eventType;
+            event.thread = thread;
+            event.currentDir = currentDir;
+            event.rootFeature = rootFeature;
+            event.rootScenario = rootScenario;
+            event.feature = feature;
+            event.scenario = scenario;
+            event.isOutline = isOutline;
+            event.isDinamic = isDinamic;
+            event.name = name;
+            event.resource = resource;
+            event.line = line;
+            event.caller = caller;
+            event.callDepth = callDepth;
+            event.url = url;
+            event.method = method;
+            event.status = status;
+            event.failureMessage = failureMessage;
+            return event;
+        }
     }
 
     public VSCodeSocketRuntimeHook() {
         host = System.getProperty("vscode.host");
         String portString = System.getProperty("vscode.port");
-        port = portString.matches("\\d+") ? Integer.parseInt(portString) : null;
+        port = portString != null && portString.matches("\\d+") ? Integer.parseInt(portString) : null;
         log.trace("VSCodeHook {}:{}", host, port);
-        if (port != null) {
+        sinks = EventSink.fromSystemProperties(host, port);
+        start();
+    }
+
+    @Override
+    public EnumSet<HookEvent> getEvents() {
+        if (sinks.isEmpty()) {
+            return EnumSet.noneOf(HookEvent.class);
+        }
+        return EnumSet.complementOf(EnumSet.of(HookEvent.BEFORE_STEP, HookEvent.AFTER_STEP));
+    }
+
+    private void start() {
+        for (EventSink sink : sinks) {
             try {
-                connect();
+                sink.start();
             } catch (Exception e) {
                 log.debug("VSCodeHook error", e);
             }
         }
     }
 
-    private void connect() throws IOException, ExecutionException, InterruptedException, TimeoutException {
-        client = SocketChannel.open();
-        client.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
-        boolean connected = client.connect(new InetSocketAddress(host != null ? host : "localhost", port));
-        log.debug("SocketChannel connection: {}", connected);
-    }
-
-    private void send(Event event) throws IOException, IllegalAccessException {
-        if (port == null || client == null) {
+    private void send(Event event) {
+        if (sinks.isEmpty()) {
             return;
         }
-        log.trace("VSCodeSocketRuntimeHook " + event.eventType + " " + event.feature + " " + event.status + " " + event.callDepth);
-        client.write(ByteBuffer.wrap(toJson(event).getBytes(UTF_8)));
+        if (log.isTraceEnabled()) {
+            log.trace("VSCodeSocketRuntimeHook " + event.eventType + " " + event.feature + " " + event.status + " " + event.callDepth);
+        }
+        for (EventSink sink : sinks) {
+            sink.send(event);
+        }
     }
 
     private ThreadLocal<String> threadName = new ThreadLocal<>();
 
+    /* start nanos keyed by the runtime object, end events may come from a different thread than their start event */
+    private final Map<Object, Long> startNanos = new ConcurrentHashMap<>();
+
+    private void started(Event event, Object runtime) {
+        long nanos = EventClock.nanos();
+        event.timestamp = EventClock.toEpochMillis(nanos);
+        event.startNanos = nanos;
+        startNanos.put(runtime, nanos);
+    }
+
+    private void ended(Event event, Object runtime) {
+        long nanos = EventClock.nanos();
+        event.timestamp = EventClock.toEpochMillis(nanos);
+        event.startNanos = startNanos.remove(runtime);
+        event.endNanos = nanos;
+    }
+
     @Override
     public void beforeSuite(Suite suite) {
-        threadName.set(getCurrentTime());
+        threadName.set(EventClock.currentTime());
+        start();
         try {
             Event event = new Event();
             event.eventType = EventType.SUITE_START;
             event.thread = threadName.get();
-            event.timestamp = System.currentTimeMillis();
+            started(event, suite);
             send(event);
         } catch (Exception e) {
             log.debug("VSCodeHook error", e);
@@ -133,46 +181,36 @@ public class VSCodeSocketRuntimeHook implements ExtendedRuntimeHook {
             Event event = new Event();
             event.eventType = EventType.SUITE_END;
             event.thread = threadName.get();
-            event.timestamp = System.currentTimeMillis();
+            ended(event, suite);
             send(event);
         } catch (Exception e) {
             log.debug("VSCodeHook error", e);
         }
-    }
-
-    private boolean isSame(Feature f1, Feature f2) {
-        if (f1 == f2) {
-            return true;
-        }
-        if (f1 == null || f2 == null) {
-            return false;
+        startNanos.clear();
+        for (EventSink sink : sinks) {
+            sink.close(SUITE_END_FLUSH_TIMEOUT);
         }
-        return f1.getResource().getPrefixedPath().equals(f2.getResource().getPrefixedPath());
-    }
-
-    private String getFeatureName(Feature feature) {
-        return String.format("%s:%s %s", feature.getResource().getRelativePath(), feature.getLine(), feature.getNameForReport());
     }
 
     @Override
     public boolean beforeFeature(FeatureRuntime fr) {
         try {
-            if (fr.caller.parentRuntime != null && isSame(feature(fr), fr.caller.parentRuntime.scenario.getFeature())) {
-                // System.out.println("feature(fr) " + feature(fr).getNameForReport());
+            if (fr.caller.parentRuntime != null && FeatureInfo.isSame(feature(fr), fr.caller.parentRuntime.scenario.getFeature())) {
                 return true;
             }
             Event event = new Event();
             event.eventType = EventType.FEATURE_START;
             event.thread = threadName.get();
-            event.timestamp = System.currentTimeMillis();
-            event.name = getFeatureName(feature(fr));
-            event.feature = feature(fr).getNameForReport();
-            event.rootFeature = feature(fr).getNameForReport();
-            event.resource = feature(fr).getResource().getRelativePath();
+            started(event, fr);
+            FeatureInfo info = FeatureInfo.of(feature(fr));
+            event.name = info.name;
+            event.feature = info.nameForReport;
+            event.rootFeature = info.nameForReport;
+            event.resource = info.relativePath;
             event.line = getFeatureCallLine(fr); // feature(fr).getCallLine();
             if (fr.caller != null && feature(fr.caller) != null) {
                 // event.parent = fr.caller.hashCode();
-                event.caller = feature(fr.caller).getNameForReport();
+                event.caller = FeatureInfo.of(feature(fr.caller)).nameForReport;
                 event.callDepth = fr.caller.depth;
             }
 
@@ -185,22 +223,22 @@ public class VSCodeSocketRuntimeHook implements ExtendedRuntimeHook {
 
     @Override
     public void afterFeature(FeatureRuntime fr) {
-        if (fr.caller.parentRuntime != null && isSame(feature(fr), fr.caller.parentRuntime.scenario.getFeature())) {
-            // log.debug("afterFeature", feature(fr), fr.caller.parentRuntime.scenario.getFeature(), fr.caller.parentRuntime != null, isSame(feature(fr), fr.caller.parentRuntime.scenario.getFeature()));
+        if (fr.caller.parentRuntime != null && FeatureInfo.isSame(feature(fr), fr.caller.parentRuntime.scenario.getFeature())) {
             return;
         }
         try {
             Event event = new Event();
             event.eventType = EventType.FEATURE_END;
             event.thread = threadName.get();
-            event.timestamp = System.currentTimeMillis();
-            event.name = getFeatureName(feature(fr));
-            event.feature = feature(fr).getNameForReport();
-            event.rootFeature = feature(fr).getNameForReport();
-            event.resource = feature(fr).getResource().getRelativePath();
+            ended(event, fr);
+            FeatureInfo info = FeatureInfo.of(feature(fr));
+            event.name = info.name;
+            event.feature = info.nameForReport;
+            event.rootFeature = info.nameForReport;
+            event.resource = info.relativePath;
             event.line = getFeatureCallLine(fr); // feature(fr).getCallLine();
             if (fr.caller != null && feature(fr.caller) != null) {
-                event.caller = feature(fr.caller).getNameForReport(); // TODO build resource line
+                event.caller = FeatureInfo.of(feature(fr.caller)).nameForReport; // TODO build resource line
                 event.callDepth = fr.caller.depth;
             }
             event.status = fr.result.isFailed() ? "KO" : "OK";
@@ -219,12 +257,13 @@ public class VSCodeSocketRuntimeHook implements ExtendedRuntimeHook {
             Event event = new Event();
             event.eventType = EventType.SCENARIO_START;
             event.thread = threadName.get();
-            event.timestamp = System.currentTimeMillis();
+            started(event, sr);
             event.name = sr.scenario.getRefIdAndName();
-            event.feature = feature(sr.featureRuntime).getNameForReport();
-            event.rootFeature = feature(sr.featureRuntime.rootFeature).getNameForReport();
+            FeatureInfo info = FeatureInfo.of(feature(sr.featureRuntime));
+            event.feature = info.nameForReport;
+            event.rootFeature = FeatureInfo.of(feature(sr.featureRuntime.rootFeature)).nameForReport;
             event.scenario = sr.scenario.getRefIdAndName();
-            event.resource = feature(sr.featureRuntime).getResource().getRelativePath();
+            event.resource = info.relativePath;
             event.line = sr.scenario.getLine();
             if (sr.scenario.isOutlineExample()) {
                 event.isOutline = true;
@@ -232,12 +271,12 @@ public class VSCodeSocketRuntimeHook implements ExtendedRuntimeHook {
             }
             if (sr.caller != null && feature(sr.caller) != null) {
                 // event.parent = sr.caller.hashCode();
-                event.caller = feature(sr.caller).getNameForReport();
+                event.caller = FeatureInfo.of(feature(sr.caller)).nameForReport;
                 event.callDepth = sr.caller.depth;
                 try {
                     // event.payload = sr.caller.arg.getAsString();
                 } catch (Exception e) {
-                    event.payload = e.getMessage();
+                    event.payload = Payload.of(e.getMessage());
                 }
             }
 
@@ -254,19 +293,20 @@ public class VSCodeSocketRuntimeHook implements ExtendedRuntimeHook {
             Event event = new Event();
             event.eventType = EventType.SCENARIO_END;
             event.thread = threadName.get();
-            event.timestamp = System.currentTimeMillis();
+            ended(event, sr);
             event.name = sr.scenario.getRefIdAndName();
-            event.feature = feature(sr.featureRuntime).getNameForReport();
-            event.rootFeature = feature(sr.featureRuntime.rootFeature).getNameForReport();
+            FeatureInfo info = FeatureInfo.of(feature(sr.featureRuntime));
+            event.feature = info.nameForReport;
+            event.rootFeature = FeatureInfo.of(feature(sr.featureRuntime.rootFeature)).nameForReport;
             event.scenario = sr.scenario.getRefIdAndName();
-            event.resource = feature(sr.featureRuntime).getResource().getRelativePath();
+            event.resource = info.relativePath;
             event.line = sr.scenario.getLine();
             if (sr.scenario.isOutlineExample()) {
                 event.isOutline = true;
                 event.isDinamic = sr.scenario.isDynamic();
             }
             if (sr.caller != null && feature(sr.caller) != null) {
-                event.caller = feature(sr.caller).getNameForReport();
+                event.caller = FeatureInfo.of(feature(sr.caller)).nameForReport;
                 event.callDepth = sr.caller.depth;
             }
             event.status = sr.result.isFailed() ? "KO" : "OK";
@@ -274,7 +314,7 @@ public class VSCodeSocketRuntimeHook implements ExtendedRuntimeHook {
             try {
                 // event.payload = JsonUtils.toJson(sr.result.toKarateJson());
             } catch (Exception e) {
-                event.payload = e.getMessage();
+                event.payload = Payload.of(e.getMessage());
             }
 
             send(event);
@@ -289,12 +329,13 @@ public class VSCodeSocketRuntimeHook implements ExtendedRuntimeHook {
             Event event = new Event();
             event.eventType = EventType.SCENARIO_START;
             event.thread = threadName.get();
-            event.timestamp = System.currentTimeMillis();
+            started(event, scenarioOutline);
             event.name =  getOutlineName(sr);
-            event.feature = feature(sr.featureRuntime).getNameForReport();
-            event.rootFeature = feature(sr.featureRuntime.rootFeature).getNameForReport();
+            FeatureInfo info = FeatureInfo.of(feature(sr.featureRuntime));
+            event.feature = info.nameForReport;
+            event.rootFeature = FeatureInfo.of(feature(sr.featureRuntime.rootFeature)).nameForReport;
             event.scenario = getOutlineName(sr);
-            event.resource = feature(sr.featureRuntime).getResource().getRelativePath();
+            event.resource = info.relativePath;
             event.line = sr.scenario.getLine();
             if (sr.scenario.isOutlineExample()) {
                 event.isOutline = true;
@@ -302,12 +343,12 @@ public class VSCodeSocketRuntimeHook implements ExtendedRuntimeHook {
             }
             if (sr.caller != null && feature(sr.caller) != null) {
                 // event.parent = sr.caller.hashCode();
-                event.caller = feature(sr.caller).getNameForReport();
+                event.caller = FeatureInfo.of(feature(sr.caller)).nameForReport;
                 event.callDepth = sr.caller.depth;
                 try {
                     // event.payload = sr.caller.arg.getAsString();
                 } catch (Exception e) {
-                    event.payload = e.getMessage();
+                    event.payload = Payload.of(e.getMessage());
                 }
             }
 
@@ -324,19 +365,20 @@ public class VSCodeSocketRuntimeHook implements ExtendedRuntimeHook {
             Event event = new Event();
             event.eventType = EventType.SCENARIO_END;
             event.thread = threadName.get();
-            event.timestamp = System.currentTimeMillis();
+            ended(event, scenarioOutline);
             event.name =  getOutlineName(sr);
-            event.feature = feature(sr.featureRuntime).getNameForReport();
-            event.rootFeature = feature(sr.featureRuntime.rootFeature).getNameForReport();
+            FeatureInfo info = FeatureInfo.of(feature(sr.featureRuntime));
+            event.feature = info.nameForReport;
+            event.rootFeature = FeatureInfo.of(feature(sr.featureRuntime.rootFeature)).nameForReport;
             event.scenario = getOutlineName(sr);
-            event.resource = feature(sr.featureRuntime).getResource().getRelativePath();
+            event.resource = info.relativePath;
             event.line = sr.scenario.getLine();
             if (sr.scenario.isOutlineExample()) {
                 event.isOutline = true;
                 event.isDinamic = sr.scenario.isDynamic();
             }
             if (sr.caller != null && feature(sr.caller) != null) {
-                event.caller = feature(sr.caller).getNameForReport();
+                event.caller = FeatureInfo.of(feature(sr.caller)).nameForReport;
                 event.callDepth = sr.caller.depth;
             }
             event.status = sr.result.isFailed() ? "KO" : "OK";
@@ -344,7 +386,7 @@ public class VSCodeSocketRuntimeHook implements ExtendedRuntimeHook {
             try {
                 // event.payload = JsonUtils.toJson(sr.result.toKarateJson());
             } catch (Exception e) {
-                event.payload = e.getMessage();
+                event.payload = Payload.of(e.getMessage());
             }
 
             send(event);
@@ -358,10 +400,15 @@ public class VSCodeSocketRuntimeHook implements ExtendedRuntimeHook {
             Event event = new Event();
             event.thread = threadName.get();
             event.eventType = EventType.REQUEST;
+            started(event, request);
             event.method = request.getMethod();
             event.url = request.getUrl();
             event.headers = new HashMap<>(fromHeaders(request.getHeaders()));
-            event.payload = request.getBodyAsString();
+            boolean capture = capturePolicy.sample();
+            capturePayloads.set(capture);
+            if (capture) {
+                event.payload = capturePolicy.payload(request.getBody(), request.getContentType());
+            }
             send(event);
         } catch (Exception e) {
             log.debug("VSCodeHook error", e);
@@ -373,11 +420,14 @@ public class VSCodeSocketRuntimeHook implements ExtendedRuntimeHook {
             Event event = new Event();
             event.thread = threadName.get();
             event.eventType = EventType.RESPONSE;
+            ended(event, request);
             event.method = request.getMethod();
             event.url = request.getUrl();
             event.status = String.valueOf(response.getStatus());
             event.headers = new HashMap<>(fromHeaders(response.getHeaders()));
-            event.payload = response.getBodyAsString();
+            if (!Boolean.FALSE.equals(capturePayloads.get()) && capturePolicy.capturesResponse(response.getStatus())) {
+                event.payload = capturePolicy.payload(response.getBody(), response.getContentType());
+            }
             send(event);
         } catch (Exception e) {
             log.debug("VSCodeHook error", e);
@@ -392,10 +442,6 @@ public class VSCodeSocketRuntimeHook implements ExtendedRuntimeHook {
                 .collect(Collectors.toMap(e -> e.getKey(), e -> StringUtils.join(e.getValue().toArray(), ',')));
     }
 
-    private static String getCurrentTime() {
-        return DATE_FORMAT.format(new Date());
-    }
-
     private static StringUtils.Pair details(String errorMessage) {
         String fullMessage = errorMessage.replace("\r", "").replace("\t", "  ");
         String[] messageInfo = fullMessage.split("\n", 2);
@@ -406,118 +452,5 @@ public class VSCodeSocketRuntimeHook implements ExtendedRuntimeHook {
         }
     }
 
-    private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd'T'hh:mm:ss.SSSZ");
-
-    public static String toJson(Event event) throws IllegalAccessException {
-        Map<String, Object> map = new HashMap<>();
-        for (Field field : event.getClass().getDeclaredFields()) {
-            if(field.getName().startsWith("this$")) {
-                continue;
-            }
-            map.put(field.getName(), field.get(event));
-        }
-        return toJson(map);
-    }
-
-    public static String toJson(Map<String, Object> map) {
-        java.io.Writer writer = new StringWriter();
-        try {
-            boolean needsComma = false;
-            writer.write('{');
-            for (final Map.Entry<String,?> entry : map.entrySet()) {
-                if (needsComma) {
-                    writer.write(',');
-                }
-                final String key = entry.getKey();
-                quote(key, writer);
-                writer.write(':');
-                try {
-                    writeValue(writer, entry.getValue());
-                } catch (Exception e) {
-                    throw new RuntimeException("Unable to write JSONObject value for key: " + key, e);
-                }
-                needsComma = true;
-            }
-            writer.write('}');
-            return writer.toString();
-        } catch (IOException exception) {
-            throw new RuntimeException(exception);
-        }
-    }
-
-    static final Writer writeValue(Writer writer, Object value) throws IOException {
-        if (value == null || value.equals(null)) {
-            writer.write("null");
-        } else if (value instanceof Number) {
-                writer.write(value.toString());
-        } else if (value instanceof Boolean) {
-            writer.write(value.toString());
-        } else if (value instanceof Enum<?>) {
-            quote(((Enum<?>)value).name(), writer);
-        } else if (value instanceof Map) {
-            writer.write(toJson((Map) value));
-        } else {
-            quote(value.toString(), writer);
-        }
-        return writer;
-    }
-
-    public static Writer quote(String string, Writer w) throws IOException {
-        if (string == null || string.isEmpty()) {
-            w.write("\"\"");
-            return w;
-        }
-
-        char b;
-        char c = 0;
-        String hhhh;
-        int i;
-        int len = string.length();
-
-        w.write('"');
-        for (i = 0; i < len; i += 1) {
-            b = c;
-            c = string.charAt(i);
-            switch (c) {
-                case '\\':
-                case '"':
-                    w.write('\\');
-                    w.write(c);
-                    break;
-                case '/':
-                    if (b == '<') {
-                        w.write('\\');
-                    }
-                    w.write(c);
-                    break;
-                case '\b':
-                    w.write("\\b");
-                    break;
-                case '\t':
-                    w.write("\\t");
-                    break;
-                case '\n':
-                    w.write("\\n");
-                    break;
-                case '\f':
-                    w.write("\\f");
-                    break;
-                case '\r':
-                    w.write("\\r");
-                    break;
-                default:
-                    if (c < ' ' || (c >= '\u0080' && c < '\u00a0')
-                            || (c >= '\u2000' && c < '\u2100')) {
-                        w.write("\\u");
-                        hhhh = Integer.toHexString(c);
-                        w.write("0000", 0, 4 - hhhh.length());
-                        w.write(hhhh);
-                    } else {
-                        w.write(c);
-                    }
-            }
-        }
-        w.write('"');
-        return w;
-    }
+    private static final long SUITE_END_FLUSH_TIMEOUT = 10000;
 }
@@ -5,31 +5,37 @@ import com.intuit.karate.core.Feature;
 import com.intuit.karate.core.FeatureRuntime;
 import com.intuit.karate.core.ScenarioCall;
 
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.util.List;
 
+/**
+ * Compatibility with karate 1.2.0 and previous. Fields and methods missing from the karate 1.3 api are resolved once,
+ * when this class is initialized; if one is not found, calls using it fail with an {@link IllegalStateException}.
+ */
 class Karate12 implements Karate {
+
+    private static final MethodHandle FEATURE_RUNTIME_FEATURE = getter(FeatureRuntime.class, "feature", Feature.class);
+    private static final MethodHandle SCENARIO_CALL_FEATURE = getter(ScenarioCall.class, "feature", Feature.class);
+    private static final MethodHandle FEATURE_CALL_LINE = method(Feature.class, "getCallLine", MethodType.methodType(int.class));
+    private static final MethodHandle SUITE_FEATURES = getter(Suite.class, "features", List.class);
+
     @Override
     public Feature feature(FeatureRuntime featureRuntime) {
         try {
-            // compatibility with karate 1.2.0 and previous
-            return (Feature) featureRuntime.getClass().getField("feature").get(featureRuntime);
-        } catch (IllegalAccessException ex) {
-            throw new RuntimeException(ex);
-        } catch (NoSuchFieldException ex) {
-            throw new RuntimeException(ex);
+            return (Feature) FEATURE_RUNTIME_FEATURE.invokeExact(featureRuntime);
+        } catch (Throwable ex) {
+            throw rethrow(ex);
         }
     }
 
     @Override
     public Feature feature(ScenarioCall scenarioCall) {
         try {
-            // compatibility with karate 1.2.0 and previous
-            return (Feature) scenarioCall.getClass().getField("feature").get(scenarioCall);
-        } catch (IllegalAccessException ex) {
-            throw new RuntimeException(ex);
-        } catch (NoSuchFieldException ex) {
-            throw new RuntimeException(ex);
+            return (Feature) SCENARIO_CALL_FEATURE.invokeExact(scenarioCall);
+        } catch (Throwable ex) {
+            throw rethrow(ex);
         }
     }
 
@@ -37,24 +43,53 @@ class Karate12 implements Karate {
     public int getFeatureCallLine(FeatureRuntime featureRuntime) {
         Feature feature = feature(featureRuntime);
         try {
-            return (int) feature.getClass().getMethod("getCallLine").invoke(feature);
-        } catch (IllegalAccessException ex) {
-            throw new RuntimeException(ex);
-        } catch (InvocationTargetException ex) {
-            throw new RuntimeException(ex);
-        } catch (NoSuchMethodException ex) {
-            throw new RuntimeException(ex);
+            return (int) FEATURE_CALL_LINE.invokeExact(feature);
+        } catch (Throwable ex) {
+            throw rethrow(ex);
         }
     }
 
     @Override
     public List<Feature> features(Suite suite) {
         try {
-            return (List<Feature>) suite.getClass().getField("features").get(suite);
-        } catch (IllegalAccessException ex) {
-            throw new RuntimeException(ex);
-        } catch (NoSuchFieldException ex) {
-            throw new RuntimeException(ex);
+            return (List<Feature>) SUITE_FEATURES.invokeExact(suite);
+        } catch (Throwable ex) {
+            throw rethrow(ex);
+        }
+    }
+
+    private static MethodHandle getter(Class<?> type, String name, Class<?> fieldType) {
+        try {
+            return MethodHandles.publicLookup().findGetter(type, name, fieldType);
+        } catch (NoSuchFieldException | IllegalAccessException ex) {
+            return missing(type, name, MethodType.methodType(fieldType, type));
+        }
+    }
+
+    private static MethodHandle method(Class<?> type, String name, MethodType methodType) {
+        try {
+            return MethodHandles.publicLookup().findVirtual(type, name, methodType);
+        } catch (NoSuchMethodException | IllegalAccessException ex) {
+            return missing(type, name, methodType.insertParameterTypes(0, type));
+        }
+    }
+
+    /**
+     * @return a handle with the same type as the missing one, throwing when invoked.
+     */
+    private static MethodHandle missing(Class<?> type, String name, MethodType handleType) {
+        IllegalStateException error = new IllegalStateException("Not found in this karate version: " + type.getName() + "." + name);
+        MethodHandle thrower = MethodHandles.throwException(handleType.returnType(), IllegalStateException.class).bindTo(error);
+        return MethodHandles.dropArguments(thrower, 0, handleType.parameterList());
+    }
+
+    private static RuntimeException rethrow(Throwable ex) {
+        if (ex instanceof RuntimeException) {
+            return (RuntimeException) ex;
+        }
+        if (ex instanceof Error) {
+            throw (Error) ex;
         }
+        return new RuntimeException(ex);
     }
 }
@@ -10,15 +10,24 @@ import java.util.List;
 public class KarateCompatibility {
 
     private static Karate compatibility;
+    private static boolean featureCall;
     static {
         try {
             Thread.currentThread().getContextClassLoader().loadClass("com.intuit.karate.core.FeatureCall");
             compatibility = new Karate13();
+            featureCall = true;
         } catch (ClassNotFoundException e) {
             compatibility = new Karate12();
         }
     }
 
+    /**
+     * @return true if this karate version has <code>com.intuit.karate.core.FeatureCall</code> (1.3 and later).
+     */
+    public static boolean hasFeatureCall() {
+        return featureCall;
+    }
+
     public static Feature feature(FeatureRuntime featureRuntime) {
         return compatibility.feature(featureRuntime);
     }
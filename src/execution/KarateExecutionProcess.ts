@@ -21,10 +21,14 @@ export type Event = {
     outline: boolean;
     dynamic: boolean;
     duration: number;
+    quiet?: boolean;
+    passed?: number;
+    failed?: number;
+    progress?: { locationHint: string; passed: number; failed: number }[];
 };
 
 export type SummaryEvent = { running: boolean; passed: number; failed: number };
-type TestServerProcess = { cwd?: string; env?: string; port?: number; process?: ChildProcessWithoutNullStreams };
+type TestServerProcess = { cwd?: string; env?: string; port?: number; process?: ChildProcessWithoutNullStreams; runId?: number };
 export class KarateExecutionProcess {
     static debugProcess: TestServerProcess = {};
     static runProcess: TestServerProcess = {};
@@ -64,7 +68,7 @@ export class KarateExecutionProcess {
         if (this.isExecuting) {
             vscode.window.showInformationMessage('Karate is already running', 'Cancel').then(selection => {
                 if (selection === 'Cancel' && this.isExecuting) {
-                    testServer.process && testServer.process.kill();
+                    this.cancelExecution(testServer);
                     karateOutputChannel.append('[Canceled]\n', false);
                     this.onExecuting.fire({ running: false, passed: 0, failed: 0 });
                 }
@@ -84,7 +88,7 @@ export class KarateExecutionProcess {
         vscode.window.withProgress({ location, title, cancellable: true }, async (progress, token) => {
             this.progress = progress;
             token.onCancellationRequested(() => {
-                testServer.process && testServer.process.kill();
+                this.cancelExecution(testServer);
                 karateOutputChannel.append('[Canceled]\n', false);
                 this.onExecuting.fire({ running: false, passed: 0, failed: 0 });
             });
@@ -104,9 +108,32 @@ export class KarateExecutionProcess {
         });
     }
 
+    /**
+     * Runs on the test server are cancelled keeping the process alive, otherwise the process is killed.
+     */
+    private static cancelExecution(testServer: TestServerProcess) {
+        if (testServer.runId && testServer.port) {
+            const runId = testServer.runId;
+            testServer.runId = null;
+            http.request(`http://localhost:${testServer.port}/runs/${runId}/cancel`, { method: 'POST' }, res => res.resume())
+                .on('error', () => testServer.process && testServer.process.kill())
+                .end();
+        } else {
+            testServer.process && testServer.process.kill();
+        }
+    }
+
     private static executeOnTestProcess(port: number, command: string) {
-        http.get(`http://localhost:${port}/${command.split('vscode.KarateTestProcess')[1]}`, res => {
-            if (res.statusCode !== 200) {
+        this.runProcess.runId = null;
+        const body = JSON.stringify({ commandLine: command.split('vscode.KarateTestProcess')[1] });
+        const request = http.request(`http://localhost:${port}/runs`, { method: 'POST', headers: { 'Content-Type': 'application/json' } }, res => {
+            if (res.statusCode === 200) {
+                let response = '';
+                res.on('data', chunk => (response += chunk));
+                res.on('end', () => {
+                    this.runProcess.runId = JSON.parse(response).runId;
+                });
+            } else {
                 let errorMessage = '';
                 res.on('data', chunk => (errorMessage += chunk));
                 res.on('end', () => {
@@ -114,6 +141,7 @@ export class KarateExecutionProcess {
                 });
             }
         });
+        request.end(body);
     }
 
     private static startTestProcess(testServerProcess: TestServerProcess, command: string, onPortReadyCallback?: (port: number) => any) {
@@ -153,8 +181,15 @@ export class KarateExecutionProcess {
                                     this.reportProgress({ message: `${getFeatureName(event)} / ${event.name}` });
                                 } else if (event.event === 'testFinished' || event.event === 'testFailed') {
                                     karateOutputChannel.endScenario(event.locationHint);
-                                    event.event === 'testFailed' ? this.summary.failed++ : this.summary.passed++;
+                                    if (!event.quiet) {
+                                        event.event === 'testFailed' ? this.summary.failed++ : this.summary.passed++;
+                                        this.onExecuting.fire(this.summary);
+                                    }
+                                } else if (event.event === 'testProgress') {
+                                    this.summary.passed = event.passed;
+                                    this.summary.failed = event.failed;
                                     this.onExecuting.fire(this.summary);
+                                    this.reportProgress({ message: `${event.passed} passed, ${event.failed} failed` });
                                 } else if (event.event === 'testOutlineFinished') {
                                     karateOutputChannel.endScenarioOutline(event.locationHint);
                                 } else if (event.event === 'featureFinished') {
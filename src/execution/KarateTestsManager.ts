@@ -228,6 +228,11 @@ export function processEvent(event: Event): void {
         featureErrors.push(errorMessage);
         outlineErrors.push(errorMessage);
         testRunner.failed(findTestItem(event.cwd, event.locationHint), errorMessage);
+    } else if (event.event === 'testProgress') {
+        // quiet mode: only features without failures are reported here, failed scenarios come as testFailed
+        event.progress
+            .filter(feature => feature.failed === 0)
+            .forEach(feature => testRunner.passed(findTestItem(event.cwd, feature.locationHint)));
     } else if (event.event === 'testOutlineFinished') {
         if (outlineErrors.length > 0) {
             testRunner.failed(findTestItem(event.cwd, event.locationHint), outlineErrors);
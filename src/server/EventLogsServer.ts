@@ -1,4 +1,5 @@
 import * as net from 'net';
+import EventStreamDecoder from './EventStreamDecoder';
 import { LoggingEventVO } from './KarateEventLogsModels';
 
 export default class EventLogsServer {
@@ -12,36 +13,16 @@ export default class EventLogsServer {
 
     createServer() {
         this.server = net.createServer((socket: net.Socket) => {
-            socket.setEncoding('utf-8');
             socket.setTimeout(10000);
 
             // When receive client data.
-            let buffer = '';
+            const decoder = new EventStreamDecoder(event => this.callback && this.callback(event));
             socket.on('data', data => {
-                if (!this.callback) {
-                    return;
-                }
-                buffer = buffer + data.toString();
-                if (buffer.startsWith('{') && buffer.endsWith('}')) {
-                    if (buffer.includes('}{')) {
-                        buffer
-                            .substring(1, buffer.length - 1)
-                            .split('}{')
-                            .forEach(item => {
-                                try {
-                                    this.callback(JSON.parse('{' + item + '}'));
-                                } catch (e) {
-                                    console.error('ERROR socket.on(data) JSON.parse each', e.message, '{' + item + '}');
-                                }
-                            });
-                    } else {
-                        try {
-                            this.callback(JSON.parse(buffer));
-                        } catch (e) {
-                            console.error('ERROR socket.on(data) JSON.parse', e.message, buffer);
-                        }
-                    }
-                    buffer = '';
+                try {
+                    decoder.push(data as Buffer);
+                } catch (e) {
+                    console.error('ERROR socket.on(data)', e.message);
+                    socket.destroy();
                 }
             });
 
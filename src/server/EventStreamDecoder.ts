@@ -0,0 +1,182 @@
+import { StringDecoder } from 'string_decoder';
+import { LoggingEventVO } from './KarateEventLogsModels';
+import { decodeMsgPack } from './MsgPack';
+
+const MAGIC = 'KIDE';
+const PREAMBLE_LENGTH = MAGIC.length + 2;
+const SUPPORTED_VERSIONS = [1];
+const ENCODING_JSON = 0;
+const ENCODING_MSGPACK = 1;
+const DICTIONARY_FIELDS = ['thread', 'currentDir', 'rootFeature', 'feature', 'resource', 'caller'];
+
+/**
+ * Decodes the event stream sent by the Karate hook on one socket.
+ *
+ * Framed streams start with 'KIDE', a protocol version byte and an encoding byte (0 json, 1 msgpack), followed by
+ * frames prefixed with their length as a 4 bytes big endian int. Frames are decoded as soon as they are complete,
+ * only unread bytes are kept in memory. Streams starting with '{' are legacy back-to-back json objects.
+ *
+ * Framed streams may use dictionary encoding: DEFINE events map ids to values for this connection and later events
+ * refer to those values by id.
+ *
+ * Events with a payloadSize are followed by a frame with the raw UTF-8 payload, which is set as the event payload. A
+ * following frame whose length is not the payloadSize is not taken as the attachment: the event is emitted without
+ * payload and the frame is decoded as an event.
+ */
+export default class EventStreamDecoder {
+    private mode: 'unknown' | 'legacy' | 'framed' = 'unknown';
+    private encoding = ENCODING_JSON;
+    private chunks: Buffer[] = [];
+    private available = 0;
+    private dictionary: string[] = [];
+    private pendingAttachment: any = null;
+
+    private legacyBuffer = '';
+    private stringDecoder = new StringDecoder('utf8');
+
+    constructor(private callback: (event: LoggingEventVO) => void) {}
+
+    push(data: Buffer) {
+        if (this.mode === 'legacy') {
+            return this.pushLegacy(this.stringDecoder.write(data));
+        }
+        this.chunks.push(data);
+        this.available += data.length;
+        if (this.mode === 'unknown' && !this.readPreamble()) {
+            return;
+        }
+        if (this.mode === 'legacy') {
+            const buffered = this.consume(this.available);
+            return this.pushLegacy(this.stringDecoder.write(buffered));
+        }
+        this.readFrames();
+    }
+
+    private readPreamble(): boolean {
+        if (this.chunks[0][0] === '{'.charCodeAt(0)) {
+            this.mode = 'legacy';
+            return true;
+        }
+        if (this.available < PREAMBLE_LENGTH) {
+            return false;
+        }
+        const preamble = this.consume(PREAMBLE_LENGTH);
+        if (preamble.toString('ascii', 0, MAGIC.length) !== MAGIC) {
+            throw new Error('Unknown event stream preamble: ' + preamble.toString('hex'));
+        }
+        const version = preamble[MAGIC.length];
+        if (!SUPPORTED_VERSIONS.includes(version)) {
+            throw new Error(`Unsupported event stream protocol version ${version}, supported versions: ${SUPPORTED_VERSIONS}`);
+        }
+        this.encoding = preamble[MAGIC.length + 1];
+        this.mode = 'framed';
+        return true;
+    }
+
+    private readFrames() {
+        while (this.available >= 4) {
+            const length = this.peek(4).readUInt32BE(0);
+            if (this.available < 4 + length) {
+                return;
+            }
+            this.consume(4);
+            const frame = this.consume(length);
+            if (this.pendingAttachment) {
+                const event = this.pendingAttachment;
+                this.pendingAttachment = null;
+                const matches = frame.length === event.payloadSize;
+                if (matches) {
+                    event.payload = frame.toString('utf8');
+                } else {
+                    console.error(`ERROR EventStreamDecoder expected a ${event.payloadSize} bytes attachment, got a ${frame.length} bytes frame`);
+                }
+                delete event.payloadSize;
+                this.callback(event);
+                if (matches) {
+                    continue;
+                }
+            }
+            try {
+                this.onEvent(this.encoding === ENCODING_MSGPACK ? decodeMsgPack(frame) : JSON.parse(frame.toString('utf8')));
+            } catch (e) {
+                console.error('ERROR EventStreamDecoder decoding frame', e.message);
+            }
+        }
+    }
+
+    private onEvent(event: any) {
+        if (event.eventType === 'DEFINE') {
+            Object.entries(event.dictionary || {}).forEach(([id, value]) => (this.dictionary[Number(id)] = value as string));
+            return;
+        }
+        DICTIONARY_FIELDS.forEach(field => {
+            if (typeof event[field] === 'number') {
+                event[field] = this.dictionary[event[field]];
+            }
+        });
+        if (event.payloadSize !== undefined) {
+            this.pendingAttachment = event;
+            return;
+        }
+        this.callback(event);
+    }
+
+    private peek(length: number): Buffer {
+        if (this.chunks[0].length >= length) {
+            return this.chunks[0];
+        }
+        return Buffer.concat(this.chunks).subarray(0, length);
+    }
+
+    private consume(length: number): Buffer {
+        this.available -= length;
+        const first = this.chunks[0];
+        if (first.length > length) {
+            this.chunks[0] = first.subarray(length);
+            return first.subarray(0, length);
+        }
+        if (first.length === length) {
+            return this.chunks.shift();
+        }
+        const result = Buffer.allocUnsafe(length);
+        let offset = 0;
+        while (offset < length) {
+            const chunk = this.chunks[0];
+            const count = Math.min(chunk.length, length - offset);
+            chunk.copy(result, offset, 0, count);
+            offset += count;
+            if (count === chunk.length) {
+                this.chunks.shift();
+            } else {
+                this.chunks[0] = chunk.subarray(count);
+            }
+        }
+        return result;
+    }
+
+    private pushLegacy(data: string) {
+        this.legacyBuffer = this.legacyBuffer + data;
+        const buffer = this.legacyBuffer;
+        if (buffer.startsWith('{') && buffer.endsWith('}')) {
+            if (buffer.includes('}{')) {
+                buffer
+                    .substring(1, buffer.length - 1)
+                    .split('}{')
+                    .forEach(item => {
+                        try {
+                            this.callback(JSON.parse('{' + item + '}'));
+                        } catch (e) {
+                            console.error('ERROR socket.on(data) JSON.parse each', e.message, '{' + item + '}');
+                        }
+                    });
+            } else {
+                try {
+                    this.callback(JSON.parse(buffer));
+                } catch (e) {
+                    console.error('ERROR socket.on(data) JSON.parse', e.message, buffer);
+                }
+            }
+            this.legacyBuffer = '';
+        }
+    }
+}
@@ -4,6 +4,9 @@ import * as vscode from 'vscode';
 
 export class LoggingEventVO {
     timestamp: number;
+    /* hook clock nanos, only meaningful to compute durations between events of the same run */
+    startNanos: number;
+    endNanos: number;
     eventType: string;
     thread: string;
 
@@ -60,6 +63,14 @@ export class TreeEntry implements ITreeEntry {
         }
     }
 
+    durationMillis(): number | undefined {
+        const end = this.eventEnd;
+        if (end && end.startNanos !== undefined && end.endNanos !== undefined) {
+            return Math.round((end.endNanos - end.startNanos) / 1000000);
+        }
+        return undefined;
+    }
+
     asTreeItem(): vscode.TreeItem | ITreeEntryCommand {
         const eventType = this.eventStart.eventType;
         let label = '';
@@ -126,6 +137,10 @@ export class NetworkRequestResponseLog extends TreeEntry {
     asTreeItem() {
         const treeItem = new vscode.TreeItem(`${this.method} ${this.url} (${this.status})`, vscode.TreeItemCollapsibleState.Collapsed);
         treeItem.contextValue = 'NetworkRequestResponseLog';
+        const duration = this.durationMillis();
+        if (duration !== undefined) {
+            treeItem.description = `${duration}ms`;
+        }
         if (this.response) {
             treeItem.command = {
                 command: 'karateIDE.showNetworkRequestResponseLog',
@@ -216,7 +231,7 @@ export class Headers implements ITreeEntry {
     parent: NetworkLog;
     headers: Header[] = [];
     constructor(headers: { [key: string]: string }) {
-        this.headers = Object.entries(headers).map(([key, value]) => new Header(key, value));
+        this.headers = Object.entries(headers || {}).map(([key, value]) => new Header(key, value));
     }
     description() {
         return this.headers.map(h => `${h.key}: ${h.value}`).join('\n');
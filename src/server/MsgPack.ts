@@ -0,0 +1,111 @@
+/**
+ * Minimal MessagePack decoder for the types sent by the Karate hook: nil, bool, ints, floats, str, bin, array and map.
+ */
+export function decodeMsgPack(buffer: Buffer): any {
+    const reader = new MsgPackReader(buffer);
+    return reader.read();
+}
+
+class MsgPackReader {
+    private offset = 0;
+
+    constructor(private buffer: Buffer) {}
+
+    read(): any {
+        const type = this.buffer.readUInt8(this.offset++);
+        if (type < 0x80) {
+            return type;
+        } else if (type < 0x90) {
+            return this.map(type & 0x0f);
+        } else if (type < 0xa0) {
+            return this.array(type & 0x0f);
+        } else if (type < 0xc0) {
+            return this.str(type & 0x1f);
+        } else if (type >= 0xe0) {
+            return type - 0x100;
+        }
+        switch (type) {
+            case 0xc0:
+                return null;
+            case 0xc2:
+                return false;
+            case 0xc3:
+                return true;
+            case 0xc4:
+                return this.bin(this.uint(1));
+            case 0xc5:
+                return this.bin(this.uint(2));
+            case 0xc6:
+                return this.bin(this.uint(4));
+            case 0xca:
+                return this.advance(4, this.buffer.readFloatBE(this.offset));
+            case 0xcb:
+                return this.advance(8, this.buffer.readDoubleBE(this.offset));
+            case 0xcc:
+                return this.uint(1);
+            case 0xcd:
+                return this.uint(2);
+            case 0xce:
+                return this.uint(4);
+            case 0xcf:
+                return this.advance(8, Number(this.buffer.readBigUInt64BE(this.offset)));
+            case 0xd0:
+                return this.advance(1, this.buffer.readInt8(this.offset));
+            case 0xd1:
+                return this.advance(2, this.buffer.readInt16BE(this.offset));
+            case 0xd2:
+                return this.advance(4, this.buffer.readInt32BE(this.offset));
+            case 0xd3:
+                return this.advance(8, Number(this.buffer.readBigInt64BE(this.offset)));
+            case 0xd9:
+                return this.str(this.uint(1));
+            case 0xda:
+                return this.str(this.uint(2));
+            case 0xdb:
+                return this.str(this.uint(4));
+            case 0xdc:
+                return this.array(this.uint(2));
+            case 0xdd:
+                return this.array(this.uint(4));
+            case 0xde:
+                return this.map(this.uint(2));
+            case 0xdf:
+                return this.map(this.uint(4));
+        }
+        throw new Error(`Unsupported MessagePack type 0x${type.toString(16)} at offset ${this.offset - 1}`);
+    }
+
+    private advance<T>(length: number, value: T): T {
+        this.offset += length;
+        return value;
+    }
+
+    private uint(length: number): number {
+        return this.advance(length, this.buffer.readUIntBE(this.offset, length));
+    }
+
+    private str(length: number): string {
+        return this.advance(length, this.buffer.toString('utf8', this.offset, this.offset + length));
+    }
+
+    private bin(length: number): Buffer {
+        return this.advance(length, this.buffer.subarray(this.offset, this.offset + length));
+    }
+
+    private array(size: number): any[] {
+        const array = new Array(size);
+        for (let i = 0; i < size; i++) {
+            array[i] = this.read();
+        }
+        return array;
+    }
+
+    private map(size: number): { [key: string]: any } {
+        const map = {};
+        for (let i = 0; i < size; i++) {
+            const key = this.read();
+            map[key] = this.read();
+        }
+        return map;
+    }
+}
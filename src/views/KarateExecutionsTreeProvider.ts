@@ -76,7 +76,7 @@ export function runTestEntry(entry: Execution) {
 }
 
 class KarateExecutionsTreeProvider implements vscode.TreeDataProvider<Execution> {
-    public executions: FeatureExecution[] = [];
+    public executions: (FeatureExecution | ScenarioExecution)[] = [];
     private auxParentFeatureOrOutline: ScenarioOutlineExecution | FeatureExecution = undefined;
 
     private _onDidChangeTreeData: vscode.EventEmitter<any> = new vscode.EventEmitter<any>();
@@ -143,6 +143,12 @@ class KarateExecutionsTreeProvider implements vscode.TreeDataProvider<Execution>
             this.auxParentFeatureOrOutline = outline;
         } else if (event.event === 'testStarted') {
             this.auxParentFeatureOrOutline.scenarioExecutions.push(new ScenarioExecution(event));
+        } else if (event.event === 'testFailed' && event.quiet) {
+            // quiet mode: there are no start events, failed scenarios are listed at the top level
+            const scenarioExecution = new ScenarioExecution(event);
+            scenarioExecution.eventEnd = event;
+            scenarioExecution.errors.push(`${event.message}: ${event.details}`);
+            this.executions.push(scenarioExecution);
         } else if (event.event === 'testFinished' || event.event === 'testFailed') {
             const parent = this.auxParentFeatureOrOutline;
             const scenarioExecution = parent.scenarioExecutions[parent.scenarioExecutions.length - 1];
@@ -92,6 +92,10 @@ class KarateNetworkLogsTreeProvider implements vscode.TreeDataProvider<ITreeEntr
         treeItem.command = item.command;
         if (element instanceof TreeEntry) {
             treeItem.contextValue = element.eventStart.eventType;
+            const duration = element.durationMillis();
+            if (duration !== undefined) {
+                treeItem.description = `${duration}ms`;
+            }
         }
         return treeItem;
     }